@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Base class for hand-written {@link RowMapper RowMappers} that read columns by
+ * position. The column labels passed to the constructor are resolved to indices
+ * with {@link ResultSet#findColumn(String)} on the first row of each
+ * {@link ResultSet}, and the subclass receives them in the same order.
+ * <p>
+ * Instances remember the last {@link ResultSet}, so use a new instance per query
+ * rather than sharing one between threads.
+ *
+ * @param <T> the mapped type
+ */
+public abstract class ColumnIndexRowMapper<T> implements RowMapper<T> {
+
+    private final String[] labels;
+
+    private ResultSet resultSet;
+
+    private int[] columns;
+
+    protected ColumnIndexRowMapper(String... labels) {
+        this.labels = labels;
+    }
+
+    @Override
+    public final T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (rs != this.resultSet) {
+            int[] columns = new int[this.labels.length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = rs.findColumn(this.labels[i]);
+            }
+            this.columns = columns;
+            this.resultSet = rs;
+        }
+        return mapRow(rs, this.columns);
+    }
+
+    /**
+     * Map the current row.
+     *
+     * @param rs the result set, positioned on the row to map
+     * @param columns the indices of the constructor's column labels, in order
+     */
+    protected abstract T mapRow(ResultSet rs, int[] columns) throws SQLException;
+
+}
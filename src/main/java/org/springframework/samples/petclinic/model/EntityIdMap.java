@@ -0,0 +1,190 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.util.Assert;
+
+/**
+ * Collection of {@link BaseEntity entities} indexed by id in an open-addressing
+ * table keyed by primitive <code>int</code>, so lookups neither box the id nor
+ * scan the entities the way {@link EntityUtils#getById} does. Iteration follows
+ * insertion order. Not thread-safe; share it only once it is fully populated.
+ *
+ * @param <T> the entity type
+ * @see NamedEntityIndex
+ */
+public final class EntityIdMap<T extends BaseEntity> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private final List<T> entities;
+
+    private int[] keys;
+
+    private Object[] values;
+
+    private int mask;
+
+    public EntityIdMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize the number of entities expected, to size the table
+     */
+    public EntityIdMap(int expectedSize) {
+        this.entities = new ArrayList<>(expectedSize);
+        allocate(tableSize(expectedSize));
+    }
+
+    /**
+     * Create a map of the given entities, keeping their iteration order; of
+     * entities sharing an id the last one wins.
+     */
+    public static <T extends BaseEntity> EntityIdMap<T> of(Collection<? extends T> entities) {
+        EntityIdMap<T> map = new EntityIdMap<>(entities.size());
+        for (T entity : entities) {
+            map.put(entity);
+        }
+        return map;
+    }
+
+    /**
+     * Add an entity, replacing any entity with the same id.
+     *
+     * @param entity the entity, which must have an id
+     * @return the replaced entity, or <code>null</code> if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public T put(T entity) {
+        Assert.notNull(entity.getId(), "Entity must have an id");
+        int id = entity.getId();
+        int slot = slot(id);
+        T previous = (T) this.values[slot];
+        this.keys[slot] = id;
+        this.values[slot] = entity;
+        if (previous != null) {
+            this.entities.set(this.entities.indexOf(previous), entity);
+            return previous;
+        }
+        this.entities.add(entity);
+        if (this.entities.size() * 2 > this.values.length) {
+            rehash();
+        }
+        return null;
+    }
+
+    /**
+     * Look up the entity with the given id.
+     *
+     * @return the found entity, or <code>null</code> if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        return (T) this.values[slot(id)];
+    }
+
+    /**
+     * Look up the entity with the given id.
+     *
+     * @param id the entity id to look up
+     * @return the found entity
+     * @throws DataRetrievalFailureException if the entity was not found
+     */
+    public T getById(int id) throws DataRetrievalFailureException {
+        T entity = get(id);
+        if (entity == null) {
+            throw new DataRetrievalFailureException("Cannot find entity with id: " + id);
+        }
+        return entity;
+    }
+
+    public boolean containsId(int id) {
+        return get(id) != null;
+    }
+
+    public int size() {
+        return this.entities.size();
+    }
+
+    public boolean isEmpty() {
+        return this.entities.isEmpty();
+    }
+
+    /**
+     * Return the entities, in insertion order.
+     */
+    public List<T> values() {
+        return Collections.unmodifiableList(this.entities);
+    }
+
+    /**
+     * Return the ids, in insertion order, for example as a query parameter.
+     */
+    public List<Integer> getIds() {
+        List<Integer> ids = new ArrayList<>(this.entities.size());
+        for (T entity : this.entities) {
+            ids.add(entity.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Return the slot holding the given id, or the empty slot where it belongs.
+     */
+    private int slot(int id) {
+        int slot = mix(id) & this.mask;
+        while (this.values[slot] != null && this.keys[slot] != id) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        allocate(this.values.length * 2);
+        for (T entity : this.entities) {
+            int slot = slot(entity.getId());
+            this.keys[slot] = entity.getId();
+            this.values[slot] = entity;
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+}
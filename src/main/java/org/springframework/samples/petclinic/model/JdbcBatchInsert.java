@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcOperations;
+
+/**
+ * Inserts new entities, singly or with JDBC batches, after assigning their ids
+ * with a {@link JdbcIdAllocator}, so no generated keys have to be read back. If
+ * the insert fails the entities are left without ids again.
+ */
+public final class JdbcBatchInsert<T extends BaseEntity> {
+
+    private final JdbcOperations jdbcOperations;
+
+    private final JdbcIdAllocator idAllocator;
+
+    private final String table;
+
+    private final String sql;
+
+    private final ParameterSetter<T> parameterSetter;
+
+    /**
+     * @param table the table, which also names the id sequence
+     * @param sql an <code>INSERT</code> statement whose first parameter is the id
+     * @param parameterSetter sets the other statement parameters for one entity,
+     * starting at index 2
+     */
+    public JdbcBatchInsert(JdbcOperations jdbcOperations, JdbcIdAllocator idAllocator, String table, String sql,
+            ParameterSetter<T> parameterSetter) {
+        this.jdbcOperations = jdbcOperations;
+        this.idAllocator = idAllocator;
+        this.table = table;
+        this.sql = sql;
+        this.parameterSetter = parameterSetter;
+    }
+
+    /**
+     * Insert the given entity with a new id.
+     */
+    public void insert(T entity) throws DataAccessException {
+        entity.setId(this.idAllocator.nextId(this.table));
+        try {
+            this.jdbcOperations.update(this.sql, ps -> setValues(ps, entity));
+        }
+        catch (RuntimeException ex) {
+            entity.setId(null);
+            throw ex;
+        }
+    }
+
+    /**
+     * Insert the given entities with new ids, executing one batch per
+     * <code>batchSize</code> entities.
+     */
+    public void insert(final List<T> entities, final int batchSize) throws DataAccessException {
+        if (entities.isEmpty()) {
+            return;
+        }
+        this.idAllocator.assignIds(this.table, entities);
+        try {
+            this.jdbcOperations.batchUpdate(this.sql, entities, batchSize, this::setValues);
+        }
+        catch (RuntimeException ex) {
+            for (T entity : entities) {
+                entity.setId(null);
+            }
+            throw ex;
+        }
+    }
+
+    private void setValues(PreparedStatement ps, T entity) throws SQLException {
+        ps.setInt(1, entity.getId());
+        this.parameterSetter.setValues(ps, entity);
+    }
+
+    @FunctionalInterface
+    public interface ParameterSetter<T> {
+
+        void setValues(PreparedStatement ps, T entity) throws SQLException;
+
+    }
+
+}
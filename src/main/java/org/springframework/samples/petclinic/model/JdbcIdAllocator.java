@@ -0,0 +1,253 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Assigns entity ids on the client from blocks reserved in the
+ * <code>id_blocks</code> table, so inserts need not wait for a generated key and
+ * can be batched. Each sequence is named after its table and holds the next id
+ * nobody has reserved yet. A block of <code>petclinic.id-allocator.block-size</code>
+ * ids costs one <code>UPDATE</code> and one <code>SELECT</code> of that row in a
+ * transaction of its own, whose row lock keeps the blocks of several application
+ * nodes sharing the database apart on both H2 and MySQL. Ids therefore ascend
+ * within a node but interleave between nodes, and the rest of a block is skipped
+ * on restart.
+ * <p>
+ * Those transactions run on a connection the allocator borrows from the pool at
+ * startup and keeps until shutdown, one at a time. Ids are mostly wanted inside
+ * the caller's transaction, which already holds a pooled connection; borrowing a
+ * second one there would leave callers waiting on each other for the last
+ * connections of an exhausted pool. The pool therefore needs one connection more
+ * than the application's other work.
+ * <p>
+ * A missing sequence row is created from the highest id already in its table, so
+ * an existing database only needs the <code>id_blocks</code> table. Every insert
+ * into the table must take its id from here once the row exists.
+ */
+@Component
+public class JdbcIdAllocator implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(JdbcIdAllocator.class);
+
+    static final int DEFAULT_BLOCK_SIZE = 100;
+
+    private final DataSource dataSource;
+
+    private final int blockSize;
+
+    private final ConcurrentMap<String, Block> blocks = new ConcurrentHashMap<>();
+
+    // The borrowed connection, guarded by this allocator's lock
+
+    private SingleConnectionDataSource connection;
+
+    private JdbcOperations jdbcOperations;
+
+    private TransactionOperations transactions;
+
+    @Autowired
+    public JdbcIdAllocator(DataSource dataSource, Environment environment) {
+        this(dataSource,
+                environment.getProperty("petclinic.id-allocator.block-size", Integer.class, DEFAULT_BLOCK_SIZE));
+    }
+
+    JdbcIdAllocator(DataSource dataSource, int blockSize) {
+        Assert.isTrue(blockSize > 0, "Block size must be positive");
+        this.dataSource = dataSource;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public synchronized void afterSingletonsInstantiated() {
+        try {
+            connect();
+        }
+        catch (DataAccessException ex) {
+            // Borrowed on the first reservation instead
+            logger.warn("Could not borrow id allocator connection at startup: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        disconnect();
+    }
+
+    /**
+     * Return a new id from the given sequence.
+     *
+     * @param sequence the sequence, named after its table
+     */
+    public int nextId(String sequence) throws DataAccessException {
+        Block block = block(sequence);
+        synchronized (block) {
+            return take(sequence, block, 1);
+        }
+    }
+
+    /**
+     * Assign a new id from the given sequence to each of the given entities. A
+     * list longer than the remaining block reserves the rest with one round-trip.
+     *
+     * @param sequence the sequence, named after the table of the entities
+     */
+    public void assignIds(String sequence, List<? extends BaseEntity> entities) throws DataAccessException {
+        Block block = block(sequence);
+        synchronized (block) {
+            for (int i = 0; i < entities.size(); i++) {
+                entities.get(i).setId(take(sequence, block, entities.size() - i));
+            }
+        }
+    }
+
+    private Block block(String sequence) {
+        return this.blocks.computeIfAbsent(sequence, name -> {
+            Assert.isTrue(name.matches("[a-z_]+"), () -> "Invalid sequence name: " + name);
+            return new Block();
+        });
+    }
+
+    /**
+     * Take the next id of the block, first reserving a new block big enough for
+     * the given number of ids if this one is used up.
+     */
+    private int take(String sequence, Block block, int wanted) {
+        if (block.next == block.limit) {
+            int size = Math.max(this.blockSize, wanted);
+            block.next = reserve(sequence, size);
+            block.limit = block.next + size;
+        }
+        return block.next++;
+    }
+
+    /**
+     * Reserve the given number of ids and return the first of them. Reservations
+     * of all sequences take turns on the borrowed connection; one that failed, for
+     * example because the database closed it while it was idle, is replaced once.
+     */
+    private synchronized int reserve(String sequence, int size) {
+        Integer next;
+        try {
+            connect();
+            next = advance(sequence, size);
+        }
+        catch (DataAccessResourceFailureException | RecoverableDataAccessException ex) {
+            logger.warn("Replacing id allocator connection: " + ex.getMessage());
+            disconnect();
+            connect();
+            next = advance(sequence, size);
+        }
+        if (next == null) {
+            create(sequence);
+            next = advance(sequence, size);
+        }
+        if (next == null) {
+            throw new DataRetrievalFailureException("Cannot find sequence: " + sequence);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Reserved " + sequence + " ids " + (next - size) + " to " + (next - 1));
+        }
+        return next - size;
+    }
+
+    /**
+     * Move the sequence on by the given number of ids and return its new value,
+     * or <code>null</code> if it has no row yet.
+     */
+    private Integer advance(String sequence, int size) {
+        return this.transactions.execute(status -> {
+            if (this.jdbcOperations.update("UPDATE id_blocks SET next_id = next_id + ? WHERE name = ?", size,
+                    sequence) == 0) {
+                return null;
+            }
+            return this.jdbcOperations.queryForObject("SELECT next_id FROM id_blocks WHERE name = ?",
+                    Integer.class, sequence);
+        });
+    }
+
+    private void create(String sequence) {
+        try {
+            this.transactions.executeWithoutResult(status -> this.jdbcOperations.update(
+                    "INSERT INTO id_blocks (name, next_id) SELECT ?, COALESCE(MAX(id), 0) + 1 FROM " + sequence,
+                    sequence));
+        }
+        catch (DuplicateKeyException ex) {
+            // Another node created it first
+        }
+    }
+
+    private void connect() {
+        if (this.connection == null) {
+            try {
+                // Not DataSourceUtils, which would hand out the caller's connection
+                SingleConnectionDataSource connection = new SingleConnectionDataSource(
+                        this.dataSource.getConnection(), true);
+                this.jdbcOperations = new JdbcTemplate(connection);
+                this.transactions = new TransactionTemplate(new DataSourceTransactionManager(connection));
+                this.connection = connection;
+            }
+            catch (SQLException ex) {
+                throw new CannotGetJdbcConnectionException("Failed to borrow id allocator connection", ex);
+            }
+        }
+    }
+
+    private void disconnect() {
+        if (this.connection != null) {
+            // Closes the connection, which gives it back to the pool
+            this.connection.destroy();
+            this.connection = null;
+        }
+    }
+
+    private static final class Block {
+
+        private int next;
+
+        private int limit;
+
+    }
+
+}
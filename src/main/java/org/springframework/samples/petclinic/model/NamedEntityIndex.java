@@ -0,0 +1,100 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataRetrievalFailureException;
+
+/**
+ * Immutable snapshot of a small table of {@link NamedEntity named entities} (for
+ * example pet types), indexed for constant time lookup by id (unboxed, see {@link EntityIdMap})
+ * and by name.
+ *
+ * @param <T> the entity type
+ * @see EntityUtils
+ */
+public final class NamedEntityIndex<T extends NamedEntity> {
+
+    private final List<T> entities;
+
+    private final EntityIdMap<T> byId;
+
+    private final Map<String, T> byName;
+
+    private NamedEntityIndex(Collection<T> entities) {
+        this.entities = Collections.unmodifiableList(new ArrayList<>(entities));
+        this.byId = new EntityIdMap<>(entities.size());
+        this.byName = new HashMap<>(entities.size() * 2);
+        for (T entity : entities) {
+            if (!entity.isNew()) {
+                this.byId.put(entity);
+            }
+            this.byName.putIfAbsent(entity.getName(), entity);
+        }
+    }
+
+    /**
+     * Create an index over the given entities, keeping their iteration order.
+     */
+    public static <T extends NamedEntity> NamedEntityIndex<T> of(Collection<T> entities) {
+        return new NamedEntityIndex<>(entities);
+    }
+
+    /**
+     * Return all entities, in the order they were supplied.
+     */
+    public List<T> getAll() {
+        return this.entities;
+    }
+
+    /**
+     * Look up the entity with the given id.
+     *
+     * @param id the entity id to look up
+     * @return the found entity
+     * @throws DataRetrievalFailureException if the entity was not found
+     */
+    public T getById(int id) throws DataRetrievalFailureException {
+        return this.byId.getById(id);
+    }
+
+    /**
+     * Look up the entity with the given id, without throwing if there is none.
+     *
+     * @param id the entity id to look up
+     * @return the found entity, or <code>null</code> if none has that id
+     */
+    public T findById(int id) {
+        return this.byId.get(id);
+    }
+
+    /**
+     * Look up the entity with the given name.
+     *
+     * @param name the exact name to look up
+     * @return the found entity, or <code>null</code> if none has that name
+     */
+    public T findByName(String name) {
+        return this.byName.get(name);
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
+
+/**
+ * {@link ResultSetExtractor} that builds a tree of objects, such as owner, pets
+ * and visits, from a join that returns one row per object at the deepest level.
+ * Each level is identified by an integer key column, whose index is resolved once
+ * per {@link ResultSet}; a <code>NULL</code> key means the row has no object at
+ * that level or below, as produced by an outer join.
+ * <p>
+ * A new object starts whenever the key of its level changes, so the rows of each
+ * object with a nested level must be adjacent, in any order of their keys: for
+ * example <code>ORDER BY owners.last_name, owners.id, pets.id</code>. Rows of an
+ * object that are not adjacent give a second object with the same key. Keys of
+ * the deepest level may come in any order; repeated adjacent keys are mapped
+ * once.
+ * <p>
+ * Roots are collected into a list, or handed to a callback one at a time by the
+ * {@link #streaming streaming} variant. The row mappers are used for a single
+ * {@link ResultSet}, so create a new extractor for every query.
+ *
+ * @param <R> the root type
+ */
+public class NestedResultSetExtractor<R> implements ResultSetExtractor<List<R>> {
+
+    private final Level[] levels;
+
+    protected NestedResultSetExtractor(Builder<R, ?> builder) {
+        this.levels = builder.levels.toArray(new Level[0]);
+    }
+
+    /**
+     * Start building an extractor for roots mapped by the given mapper.
+     *
+     * @param keyColumn the label of the column holding the root's key
+     * @param mapper the mapper for the root
+     */
+    public static <R> Builder<R, R> root(String keyColumn, RowMapper<R> mapper) {
+        return new Builder<R, R>(new ArrayList<>()).add(keyColumn, mapper, null);
+    }
+
+    @Override
+    public List<R> extractData(ResultSet rs) throws SQLException, DataAccessException {
+        List<R> results = new ArrayList<>();
+        extractData(rs, results::add);
+        return results;
+    }
+
+    /**
+     * Return a streaming variant of this extractor, which hands each root to the
+     * given action as soon as the row after its last one has been read and keeps
+     * no reference to it afterwards. Only one root is held in memory at a time, so
+     * combine it with a fetch size to walk results too large for the heap.
+     *
+     * @param action the callback for each complete root
+     * @return an extractor returning the number of roots
+     */
+    public ResultSetExtractor<Integer> streaming(final Consumer<? super R> action) {
+        return rs -> {
+            int[] count = new int[1];
+            extractData(rs, root -> {
+                count[0]++;
+                action.accept(root);
+            });
+            return count[0];
+        };
+    }
+
+    /**
+     * Build the trees from the given result set, handing each root to the action
+     * once its nested objects have all been added.
+     */
+    @SuppressWarnings("unchecked")
+    private void extractData(ResultSet rs, Consumer<? super R> action) throws SQLException {
+        Level[] levels = this.levels;
+        int last = levels.length - 1;
+        int[] keyColumns = null;
+        Object[] current = new Object[levels.length];
+        long[] keys = new long[levels.length];
+        for (int row = 0; rs.next(); row++) {
+            if (keyColumns == null) {
+                keyColumns = new int[levels.length];
+                for (int i = 0; i < levels.length; i++) {
+                    keyColumns[i] = rs.findColumn(levels[i].keyColumn);
+                }
+            }
+            for (int i = 0; i <= last; i++) {
+                long key = rs.getLong(keyColumns[i]);
+                if (rs.wasNull()) {
+                    if (i == 0) {
+                        throw new InvalidDataAccessApiUsageException(
+                                "Null key in column '" + levels[0].keyColumn + "' at row " + row);
+                    }
+                    clear(current, i);
+                    break;
+                }
+                if (current[i] != null && key == keys[i]) {
+                    continue;
+                }
+                if (i == 0 && current[0] != null) {
+                    R complete = (R) current[0];
+                    current[0] = null;
+                    action.accept(complete);
+                }
+                Object object = levels[i].mapper.mapRow(rs, row);
+                if (i > 0) {
+                    ((BiConsumer<Object, Object>) levels[i].adder).accept(current[i - 1], object);
+                }
+                current[i] = object;
+                keys[i] = key;
+                clear(current, i + 1);
+            }
+        }
+        if (current[0] != null) {
+            action.accept((R) current[0]);
+        }
+    }
+
+    private static void clear(Object[] current, int from) {
+        for (int i = from; i < current.length; i++) {
+            current[i] = null;
+        }
+    }
+
+    /**
+     * Builder for the chain of levels of a {@link NestedResultSetExtractor}.
+     *
+     * @param <R> the root type
+     * @param <T> the type of the deepest level so far
+     */
+    public static final class Builder<R, T> {
+
+        private final List<Level> levels;
+
+        private Builder(List<Level> levels) {
+            this.levels = levels;
+        }
+
+        /**
+         * Nest a level below the deepest one so far.
+         *
+         * @param keyColumn the label of the column holding the nested object's key
+         * @param mapper the mapper for the nested object
+         * @param adder adds a nested object to its parent
+         */
+        public <C> Builder<R, C> nest(String keyColumn, RowMapper<C> mapper, BiConsumer<? super T, ? super C> adder) {
+            Assert.notNull(adder, "Adder must not be null");
+            return add(keyColumn, mapper, adder);
+        }
+
+        public NestedResultSetExtractor<R> build() {
+            return new NestedResultSetExtractor<>(this);
+        }
+
+        private <C> Builder<R, C> add(String keyColumn, RowMapper<C> mapper, BiConsumer<?, ?> adder) {
+            Assert.hasText(keyColumn, "Key column must not be empty");
+            Assert.notNull(mapper, "RowMapper must not be null");
+            this.levels.add(new Level(keyColumn, mapper, adder));
+            return new Builder<>(this.levels);
+        }
+
+    }
+
+    private static final class Level {
+
+        private final String keyColumn;
+
+        private final RowMapper<?> mapper;
+
+        private final BiConsumer<?, ?> adder;
+
+        private Level(String keyColumn, RowMapper<?> mapper, BiConsumer<?, ?> adder) {
+            this.keyColumn = keyColumn;
+            this.mapper = mapper;
+            this.adder = adder;
+        }
+
+    }
+
+}
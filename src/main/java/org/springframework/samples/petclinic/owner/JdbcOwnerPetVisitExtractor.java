@@ -0,0 +1,43 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.samples.petclinic.model.NestedResultSetExtractor;
+import org.springframework.samples.petclinic.visit.JdbcVisitRowMapper;
+
+/**
+ * {@link ResultSetExtractor} implementation by using the
+ * {@link NestedResultSetExtractor} for the rows of {@link #SELECT_OWNERS_PETS_AND_VISITS},
+ * ordered by <code>owners.id</code> and then <code>pets.id</code>. Pet types are
+ * taken from the given index.
+ */
+public class JdbcOwnerPetVisitExtractor extends NestedResultSetExtractor<Owner> {
+
+    static final String SELECT_OWNERS_PETS_AND_VISITS = "SELECT owners.id, first_name, last_name, address, city, telephone, "
+            + "pets.id, name, birth_date, type_id, owner_id, visits.id as visit_id, visit_date, description "
+            + "FROM owners LEFT OUTER JOIN pets ON owners.id = owner_id LEFT OUTER JOIN visits ON pets.id = pet_id";
+
+    public JdbcOwnerPetVisitExtractor(final NamedEntityIndex<PetType> petTypes) {
+        super(NestedResultSetExtractor.root("owners.id", new JdbcOwnerRowMapper())
+                .nest("pets.id", new JdbcPetRowMapper(), (Owner owner, Pet pet) -> {
+                    pet.setType(petTypes.getById(pet.getTypeId()));
+                    owner.addPet(pet);
+                }).nest("visit_id", new JdbcVisitRowMapper(), Pet::addVisit));
+    }
+
+}
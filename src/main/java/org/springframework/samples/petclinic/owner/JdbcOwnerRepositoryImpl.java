@@ -15,24 +15,53 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataRetrievalFailureException;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
-import org.springframework.samples.petclinic.model.EntityUtils;
+import org.springframework.jdbc.core.namedparam.SqlParameterSourceUtils;
+import org.springframework.samples.petclinic.model.EntityIdMap;
+import org.springframework.samples.petclinic.model.JdbcBatchInsert;
+import org.springframework.samples.petclinic.model.JdbcIdAllocator;
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
+import org.springframework.samples.petclinic.visit.JdbcVisitRowMapper;
 import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * A simple JDBC-based implementation of the {@link OwnerRepository} interface.
@@ -46,102 +75,549 @@ import org.springframework.stereotype.Repository;
  * @author Antoine Rey
  */
 @Repository
-public class JdbcOwnerRepositoryImpl implements OwnerRepository {
+public class JdbcOwnerRepositoryImpl implements OwnerRepository, SmartInitializingSingleton, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(JdbcOwnerRepositoryImpl.class);
+
+    /**
+     * Maximum number of owner ids bound into a single <code>IN</code> clause when
+     * loading the pets and visits of several owners at once.
+     */
+    private static final int OWNER_ID_BATCH_SIZE = 100;
+
+    static final Duration DEFAULT_NAME_INDEX_REFRESH = Duration.ofMinutes(5);
+
+    private static final String SELECT_PETS_AND_VISITS = "SELECT pets.id, name, birth_date, type_id, owner_id, visits.id as visit_id, visit_date, description, pet_id FROM pets LEFT OUTER JOIN visits ON pets.id = pet_id";
+
+    private static final String UPDATE_OWNER = "UPDATE owners SET first_name=:firstName, last_name=:lastName, address=:address, "
+            + "city=:city, telephone=:telephone WHERE id=:id";
 
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
-    private SimpleJdbcInsert insertOwner;
+    private JdbcBatchInsert<Owner> insertOwners;
 
-    @Autowired
-    public JdbcOwnerRepositoryImpl(DataSource dataSource) {
+    private JdbcOwnerSummaries summaries;
+
+    private TransactionTemplate transactions;
+
+    private ReferenceDataRegistry referenceData;
+
+    private OwnerCache ownerCache;
+
+    private OwnerFetchExecutor fetchExecutor;
+
+    private final OwnerNameIndex nameIndex = new OwnerNameIndex();
+
+    private volatile boolean nameIndexLoaded;
+
+    private volatile long nameIndexLoadedAt;
+
+    private final AtomicBoolean nameIndexRefreshing = new AtomicBoolean();
 
-        this.insertOwner = new SimpleJdbcInsert(dataSource).withTableName("owners").usingGeneratedKeyColumns("id");
+    private final long nameIndexRefreshNanos;
+
+    private final ExecutorService nameIndexRefresher;
+
+    @Autowired
+    public JdbcOwnerRepositoryImpl(DataSource dataSource, ReferenceDataRegistry referenceData,
+            OwnerCache ownerCache, OwnerFetchExecutor fetchExecutor, JdbcIdAllocator idAllocator,
+            PlatformTransactionManager transactionManager, Environment environment) {
 
         this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
 
+        this.insertOwners = new JdbcBatchInsert<>(this.namedParameterJdbcTemplate.getJdbcOperations(), idAllocator,
+                "owners",
+                "INSERT INTO owners (id, first_name, last_name, address, city, telephone) VALUES (?, ?, ?, ?, ?, ?)",
+                (ps, owner) -> {
+                    ps.setString(2, owner.getFirstName());
+                    ps.setString(3, owner.getLastName());
+                    ps.setString(4, owner.getAddress());
+                    ps.setString(5, owner.getCity());
+                    ps.setString(6, owner.getTelephone());
+                });
+
+        this.summaries = new JdbcOwnerSummaries(this.namedParameterJdbcTemplate);
+
+        this.transactions = new TransactionTemplate(transactionManager);
+
+        this.referenceData = referenceData;
+
+        this.ownerCache = ownerCache;
+
+        this.fetchExecutor = fetchExecutor;
+
+        this.nameIndexRefreshNanos = environment
+                .getProperty("petclinic.owner-name-index.refresh", Duration.class, DEFAULT_NAME_INDEX_REFRESH)
+                .toNanos();
+
+        this.nameIndexRefresher = this.nameIndexRefreshNanos > 0 ? createRefresher() : null;
+
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            rebuildNameIndex();
+        }
+        catch (DataAccessException ex) {
+            // The schema may not be there yet: try again on first use
+            logger.warn("Could not build owner name index at startup: " + ex.getMessage());
+        }
+        try {
+            if (!this.summaries.isComplete()) {
+                logger.info("Rebuilding owner summaries");
+                rebuildSummaries();
+            }
+        }
+        catch (DataAccessException ex) {
+            logger.warn("Could not check owner summaries at startup: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Rebuild the in-memory last name index from the <code>owners</code> table, for
+     * example after the table was changed behind the application's back. The index
+     * only sees this node's writes, so it is also rebuilt in the background once it
+     * is older than <code>petclinic.owner-name-index.refresh</code>, to pick up the
+     * owners other nodes have written; searches use the previous index meanwhile.
+     */
+    public void rebuildNameIndex() throws DataAccessException {
+        synchronized (this.nameIndex) {
+            this.nameIndex.rebuild(() -> {
+                Map<Integer, String> lastNames = new HashMap<>();
+                this.namedParameterJdbcTemplate.getJdbcOperations().query("SELECT id, last_name FROM owners",
+                        rs -> {
+                            lastNames.put(rs.getInt(1), rs.getString(2));
+                        });
+                return lastNames;
+            });
+            this.nameIndexLoadedAt = System.nanoTime();
+            this.nameIndexLoaded = true;
+        }
+    }
+
+    /**
+     * Rebuild the <code>owner_summary</code> table from the <code>owners</code> and
+     * <code>pets</code> tables, for example after they were changed behind the
+     * application's back. The rows are replaced in a single transaction, so
+     * searches keep finding the old rows meanwhile.
+     */
+    public void rebuildSummaries() throws DataAccessException {
+        this.transactions.executeWithoutResult(status -> this.summaries.rebuild());
     }
 
     /**
      * Loads {@link Owner Owners} from the data store by last name, returning all
-     * owners whose last name <i>starts</i> with the given name; also loads the
-     * {@link Pet Pets} and {@link Visit Visits} for the corresponding owners, if
-     * not already loaded.
+     * owners whose last name <i>starts</i> with the given name (ignoring case); also
+     * loads the {@link Pet Pets} and {@link Visit Visits} for the corresponding
+     * owners, if not already loaded. The matching ids come from the in-memory name
+     * index, so only the matching rows are read. Owners are ordered by case-folded
+     * last name and id, as the index orders them.
      */
     @Override
     public Collection<Owner> findByLastName(String lastName) throws DataAccessException {
-        Map<String, Object> params = new HashMap<>();
-        params.put("lastName", lastName + "%");
-        List<Owner> owners = this.namedParameterJdbcTemplate.query(
-                "SELECT id, first_name, last_name, address, city, telephone FROM owners WHERE last_name like :lastName",
-                params, BeanPropertyRowMapper.newInstance(Owner.class));
+        int[] ids = nameIndex().findIds(lastName);
+        String prefix = OwnerNameIndex.normalize(lastName);
+        List<Owner> owners = new ArrayList<>(ids.length);
+        Map<Integer, Integer> positions = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            positions.put(ids[i], i);
+        }
+        for (int start = 0; start < ids.length; start += OWNER_ID_BATCH_SIZE) {
+            List<Integer> batch = new ArrayList<>(OWNER_ID_BATCH_SIZE);
+            for (int i = start; i < Math.min(start + OWNER_ID_BATCH_SIZE, ids.length); i++) {
+                batch.add(ids[i]);
+            }
+            Map<String, Object> params = new HashMap<>();
+            params.put("ids", batch);
+            for (Owner owner : this.namedParameterJdbcTemplate.query(
+                    "SELECT id, first_name, last_name, address, city, telephone FROM owners WHERE id IN (:ids)",
+                    params, new JdbcOwnerRowMapper())) {
+                // the index may be ahead of what this transaction can see
+                if (OwnerNameIndex.normalize(owner.getLastName()).startsWith(prefix)) {
+                    owners.add(owner);
+                }
+            }
+        }
+        // one order across all batches, the index's
+        owners.sort(Comparator.comparing(owner -> positions.get(owner.getId())));
         loadOwnersPetsAndVisits(owners);
         return owners;
     }
 
+    @Override
+    public List<String> findLastNamesStartingWith(String prefix, int limit) {
+        return nameIndex().suggest(prefix, limit);
+    }
+
+    /**
+     * Loads one page of {@link Owner Owners} whose last name <i>starts</i> with the
+     * given name, seeking past the supplied cursor on <code>(last_name, id)</code>
+     * instead of skipping rows with an offset; also loads the {@link Pet Pets} for
+     * the owners on the page, and their {@link Visit Visits} as the plan says. The
+     * total count does not depend on the page, so the {@link OwnerFetchExecutor}
+     * may run it concurrently with the page query.
+     */
+    @Override
+    public OwnerPage findByLastName(String lastName, OwnerPage.Cursor after, int size,
+            boolean countTotal, OwnerFetchPlan fetchPlan) throws DataAccessException {
+        return this.fetchExecutor.timeFetch(() -> findPage(lastName, after, size, countTotal, fetchPlan));
+    }
+
+    private OwnerPage findPage(String lastName, OwnerPage.Cursor after, int size, boolean countTotal,
+            OwnerFetchPlan fetchPlan) {
+        boolean summary = fetchPlan == OwnerFetchPlan.SUMMARY;
+        String table = summary ? "owner_summary" : "owners";
+        String id = summary ? "owner_id" : "id";
+        String pattern = startingWith(lastName);
+        CompletableFuture<Long> total = null;
+        if (countTotal) {
+            // the count may run on another thread, so it gets parameters of its own
+            Map<String, Object> countParams = Collections.singletonMap("lastName", pattern);
+            total = this.fetchExecutor.submit("count", () -> this.namedParameterJdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM " + table + " WHERE last_name like :lastName", countParams, Long.class));
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("lastName", pattern);
+        params.put("limit", size + 1);
+        StringBuilder sql = new StringBuilder(summary ? JdbcOwnerSummaries.SELECT_SUMMARY
+                : "SELECT id, first_name, last_name, address, city, telephone FROM owners");
+        sql.append(" WHERE last_name like :lastName");
+        if (after != null) {
+            sql.append(" AND (last_name > :afterLastName OR (last_name = :afterLastName AND " + id + " > :afterId))");
+            params.put("afterLastName", after.getLastName());
+            params.put("afterId", after.getId());
+        }
+        sql.append(" ORDER BY last_name, " + id + " LIMIT :limit");
+        List<Owner> owners = this.fetchExecutor.time("page", () -> this.namedParameterJdbcTemplate
+                .query(sql.toString(), params,
+                        summary ? new JdbcOwnerSummaries.SummaryRowMapper() : new JdbcOwnerRowMapper()));
+        OwnerPage.Cursor next = null;
+        if (owners.size() > size) {
+            owners = owners.subList(0, size);
+            Owner last = owners.get(size - 1);
+            next = new OwnerPage.Cursor(last.getLastName(), last.getId());
+        }
+        if (fetchPlan == OwnerFetchPlan.PETS) {
+            loadOwnersPets(owners);
+        }
+        else if (fetchPlan == OwnerFetchPlan.PETS_AND_VISITS) {
+            loadOwnersPetsAndVisits(owners);
+        }
+        return new OwnerPage(owners, size, next, total != null ? OwnerFetchExecutor.join(total) : null);
+    }
+
     /**
      * Loads the {@link Owner} with the supplied <code>id</code>; also loads the
      * {@link Pet Pets} and {@link Visit Visits} for the corresponding owner, if not
-     * already loaded.
+     * already loaded. Owners are served from the {@link OwnerCache} when possible,
+     * and otherwise read with a single join.
      */
     @Override
-    public Owner findById(int id) throws DataAccessException {
-        Owner owner;
-        try {
-            Map<String, Object> params = new HashMap<>();
-            params.put("id", id);
-            owner = this.namedParameterJdbcTemplate.queryForObject(
-                    "SELECT id, first_name, last_name, address, city, telephone FROM owners WHERE id= :id", params,
-                    BeanPropertyRowMapper.newInstance(Owner.class));
-        } catch (EmptyResultDataAccessException ex) {
+    public Owner findById(final int id) throws DataAccessException {
+        Owner cached = this.ownerCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        return this.fetchExecutor.timeFetch(() -> {
+            long loadToken = this.ownerCache.startLoad();
+            Owner owner = this.fetchExecutor.time("owner", () -> findOwnerPetsAndVisits(id));
+            this.ownerCache.put(owner, loadToken);
+            return owner;
+        });
+    }
+
+    private Owner findOwnerPetsAndVisits(int id) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", id);
+        List<Owner> owners = this.namedParameterJdbcTemplate.query(
+                JdbcOwnerPetVisitExtractor.SELECT_OWNERS_PETS_AND_VISITS
+                        + " WHERE owners.id=:id ORDER BY pets.id, visit_date DESC, visits.id DESC",
+                params, new JdbcOwnerPetVisitExtractor(this.referenceData.getPetTypes()));
+        if (owners.isEmpty()) {
             throw new DataRetrievalFailureException("Cannot find Owner: " + id);
         }
-        loadPetsAndVisits(owner);
-        return owner;
+        return owners.get(0);
     }
 
     public void loadPetsAndVisits(final Owner owner) {
+        addPets(owner, findPetsAndVisits(owner.getId()));
+    }
+
+    private List<Pet> findPetsAndVisits(int ownerId) {
         Map<String, Object> params = new HashMap<>();
-        params.put("id", owner.getId());
-        final List<Pet> pets = this.namedParameterJdbcTemplate.query(
-                "SELECT pets.id, name, birth_date, type_id, owner_id, visits.id as visit_id, visit_date, description, pet_id FROM pets LEFT OUTER JOIN visits ON pets.id = pet_id WHERE owner_id=:id ORDER BY pet_id",
+        params.put("id", ownerId);
+        return this.namedParameterJdbcTemplate.query(
+                SELECT_PETS_AND_VISITS + " WHERE owner_id=:id ORDER BY pets.id, visit_date DESC, visits.id DESC",
                 params, new JdbcPetVisitExtractor());
-        Collection<PetType> petTypes = getPetTypes();
+    }
+
+    private void addPets(Owner owner, List<Pet> pets) {
+        NamedEntityIndex<PetType> petTypes = this.referenceData.getPetTypes();
         for (Pet pet : pets) {
-            pet.setType(EntityUtils.getById(petTypes, PetType.class, pet.getTypeId()));
+            pet.setType(petTypes.getById(pet.getTypeId()));
             owner.addPet(pet);
         }
     }
 
+    /**
+     * Streams all {@link Owner Owners} with their {@link Pet Pets} and
+     * {@link Visit Visits} from a single ordered join over a forward-only cursor.
+     * Only the owner currently being assembled is held in memory. Note that MySQL
+     * Connector/J only honours the fetch size with <code>useCursorFetch=true</code>.
+     */
+    @Override
+    public void exportAll(int fetchSize, final Consumer<Owner> action) throws DataAccessException {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(
+                this.namedParameterJdbcTemplate.getJdbcTemplate().getDataSource());
+        jdbcTemplate.setFetchSize(fetchSize);
+        jdbcTemplate.query(JdbcOwnerPetVisitExtractor.SELECT_OWNERS_PETS_AND_VISITS
+                + " ORDER BY owners.id, pets.id, visit_date DESC, visits.id DESC",
+                new JdbcOwnerPetVisitExtractor(this.referenceData.getPetTypes()).streaming(action));
+    }
+
+    /**
+     * Saves the owner and refreshes its summary in one transaction.
+     */
+    @Override
+    public void save(final Owner owner) throws DataAccessException {
+        this.transactions.executeWithoutResult(status -> {
+            if (owner.isNew()) {
+                this.insertOwners.insert(owner);
+            } else {
+                this.namedParameterJdbcTemplate.update(UPDATE_OWNER, new BeanPropertySqlParameterSource(owner));
+            }
+            this.summaries.refresh(Collections.singleton(owner.getId()));
+            this.ownerCache.evict(owner.getId());
+            updateNameIndex(owner.getId(), owner.getLastName());
+        });
+    }
+
+    @Override
+    public void saveAll(final List<Owner> owners, final int batchSize) throws DataAccessException {
+        this.transactions.executeWithoutResult(status -> {
+            List<Owner> inserts = new ArrayList<>();
+            List<Owner> updates = new ArrayList<>();
+            for (Owner owner : owners) {
+                (owner.isNew() ? inserts : updates).add(owner);
+            }
+            this.insertOwners.insert(inserts, batchSize);
+            for (int start = 0; start < updates.size(); start += batchSize) {
+                this.namedParameterJdbcTemplate.batchUpdate(UPDATE_OWNER, SqlParameterSourceUtils
+                        .createBatch(updates.subList(start, Math.min(start + batchSize, updates.size()))));
+            }
+            List<Integer> ids = new ArrayList<>(owners.size());
+            for (Owner owner : owners) {
+                ids.add(owner.getId());
+                this.ownerCache.evict(owner.getId());
+                updateNameIndex(owner.getId(), owner.getLastName());
+            }
+            this.summaries.refresh(ids);
+        });
+    }
+
+    /**
+     * Record a saved last name in the name index straight away, so the saving
+     * transaction finds it, and put the committed name back if that transaction
+     * rolls back.
+     */
+    private void updateNameIndex(final int id, String lastName) {
+        final OwnerNameIndex index = nameIndex();
+        index.put(id, lastName);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        Map<String, Object> params = new HashMap<>();
+                        params.put("id", id);
+                        List<String> committed = namedParameterJdbcTemplate.queryForList(
+                                "SELECT last_name FROM owners WHERE id=:id", params, String.class);
+                        if (committed.isEmpty()) {
+                            index.remove(id);
+                        }
+                        else {
+                            index.put(id, committed.get(0));
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private OwnerNameIndex nameIndex() {
+        if (!this.nameIndexLoaded) {
+            synchronized (this.nameIndex) {
+                if (!this.nameIndexLoaded) {
+                    rebuildNameIndex();
+                }
+            }
+        }
+        else if (this.nameIndexRefresher != null
+                && System.nanoTime() - this.nameIndexLoadedAt >= this.nameIndexRefreshNanos) {
+            refreshNameIndex();
+        }
+        return this.nameIndex;
+    }
+
+    /**
+     * Rebuild the name index in the background, unless that is already under way.
+     */
+    private void refreshNameIndex() {
+        if (!this.nameIndexRefreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.nameIndexRefresher.execute(() -> {
+                try {
+                    rebuildNameIndex();
+                }
+                catch (RuntimeException ex) {
+                    logger.warn("Could not refresh owner name index, keeping the current one", ex);
+                }
+                finally {
+                    this.nameIndexRefreshing.set(false);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex) {
+            this.nameIndexRefreshing.set(false);
+        }
+    }
+
     @Override
-    public void save(Owner owner) throws DataAccessException {
-        BeanPropertySqlParameterSource parameterSource = new BeanPropertySqlParameterSource(owner);
-        if (owner.isNew()) {
-            Number newKey = this.insertOwner.executeAndReturnKey(parameterSource);
-            owner.setId(newKey.intValue());
-        } else {
-            this.namedParameterJdbcTemplate
-                    .update("UPDATE owners SET first_name=:firstName, last_name=:lastName, address=:address, "
-                            + "city=:city, telephone=:telephone WHERE id=:id", parameterSource);
+    public void destroy() {
+        if (this.nameIndexRefresher != null) {
+            this.nameIndexRefresher.shutdown();
         }
     }
 
+    private static ExecutorService createRefresher() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("owner-name-index-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Return a <code>LIKE</code> pattern matching the given prefix literally, as
+     * the name index does.
+     */
+    private static String startingWith(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
     public Collection<PetType> getPetTypes() throws DataAccessException {
-        return this.namedParameterJdbcTemplate.query("SELECT id, name FROM types ORDER BY name",
-                new HashMap<String, Object>(), BeanPropertyRowMapper.newInstance(PetType.class));
+        return this.referenceData.getPetTypes().getAll();
     }
 
     /**
      * Loads the {@link Pet} and {@link Visit} data for the supplied {@link List} of
-     * {@link Owner Owners}.
+     * {@link Owner Owners}. Rather than querying once per owner, the pets and visits
+     * are fetched with one join per batch of {@link #OWNER_ID_BATCH_SIZE} owner ids
+     * and attached to their owners afterwards, so the number of round-trips does not
+     * grow with the number of owners.
      *
      * @param owners the list of owners for whom the pet and visit data should be
      *               loaded
      * @see #loadPetsAndVisits(Owner)
      */
     private void loadOwnersPetsAndVisits(List<Owner> owners) {
-        for (Owner owner : owners) {
-            loadPetsAndVisits(owner);
+        if (owners.isEmpty()) {
+            return;
+        }
+        EntityIdMap<Owner> ownersById = EntityIdMap.of(owners);
+        List<Integer> ownerIds = ownersById.getIds();
+        NamedEntityIndex<PetType> petTypes = this.referenceData.getPetTypes();
+        for (int start = 0; start < ownerIds.size(); start += OWNER_ID_BATCH_SIZE) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("ids", ownerIds.subList(start, Math.min(start + OWNER_ID_BATCH_SIZE, ownerIds.size())));
+            List<Pet> pets = this.namedParameterJdbcTemplate.query(
+                    SELECT_PETS_AND_VISITS
+                            + " WHERE owner_id IN (:ids) ORDER BY pets.id, visit_date DESC, visits.id DESC",
+                    params, new JdbcPetVisitExtractor());
+            for (Pet pet : pets) {
+                pet.setType(petTypes.getById(pet.getTypeId()));
+                ownersById.get(pet.getOwnerId()).addPet(pet);
+            }
+        }
+    }
+
+    /**
+     * Loads the {@link Pet} data for the supplied {@link List} of {@link Owner
+     * Owners}, one query per batch of {@link #OWNER_ID_BATCH_SIZE} owner ids, and
+     * leaves their visits to a {@link BatchVisitLoader} shared by all of the pets.
+     */
+    private void loadOwnersPets(List<Owner> owners) {
+        if (owners.isEmpty()) {
+            return;
         }
+        EntityIdMap<Owner> ownersById = EntityIdMap.of(owners);
+        List<Integer> ownerIds = ownersById.getIds();
+        NamedEntityIndex<PetType> petTypes = this.referenceData.getPetTypes();
+        BatchVisitLoader visitLoader = new BatchVisitLoader(this.namedParameterJdbcTemplate);
+        for (int start = 0; start < ownerIds.size(); start += OWNER_ID_BATCH_SIZE) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("ids", ownerIds.subList(start, Math.min(start + OWNER_ID_BATCH_SIZE, ownerIds.size())));
+            List<Pet> pets = this.namedParameterJdbcTemplate.query(
+                    "SELECT id, name, birth_date, type_id, owner_id FROM pets WHERE owner_id IN (:ids) ORDER BY id",
+                    params, new JdbcPetRowMapper());
+            for (Pet pet : pets) {
+                pet.setType(petTypes.getById(pet.getTypeId()));
+                ownersById.get(pet.getOwnerId()).addPet(pet);
+                visitLoader.defer(pet);
+            }
+        }
+    }
+
+    /**
+     * Reads the visits of every pet still waiting for them when the first of those
+     * pets is asked for its visits, so that walking the visits of a whole page of
+     * owners costs one query per batch of pets rather than one per pet.
+     */
+    private static final class BatchVisitLoader implements VisitLoader {
+
+        private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+        private EntityIdMap<Pet> pending = new EntityIdMap<>();
+
+        BatchVisitLoader(NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+            this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        }
+
+        void defer(Pet pet) {
+            this.pending.put(pet);
+            pet.setVisitLoader(this);
+        }
+
+        @Override
+        public synchronized void loadVisits(Pet pet) {
+            EntityIdMap<Pet> petsById = this.pending;
+            this.pending = new EntityIdMap<>();
+            petsById.put(pet);
+            for (Pet each : petsById.values()) {
+                each.setVisitLoader(null);
+            }
+            List<Integer> petIds = petsById.getIds();
+            RowMapper<Visit> visitMapper = new JdbcVisitRowMapper();
+            for (int start = 0; start < petIds.size(); start += OWNER_ID_BATCH_SIZE) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("ids", petIds.subList(start, Math.min(start + OWNER_ID_BATCH_SIZE, petIds.size())));
+                this.namedParameterJdbcTemplate.query(
+                        "SELECT id as visit_id, visit_date, description, pet_id FROM visits WHERE pet_id IN (:ids) "
+                                + "ORDER BY visit_date DESC, id DESC",
+                        params, (ResultSetExtractor<Void>) rs -> {
+                            int petIdColumn = rs.findColumn("pet_id");
+                            for (int row = 0; rs.next(); row++) {
+                                petsById.get(rs.getInt(petIdColumn)).addVisit(visitMapper.mapRow(rs, row));
+                            }
+                            return null;
+                        });
+            }
+        }
+
     }
 
 }
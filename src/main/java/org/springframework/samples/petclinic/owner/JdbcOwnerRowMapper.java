@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.samples.petclinic.model.ColumnIndexRowMapper;
+
+/**
+ * {@link RowMapper} implementation mapping data from a {@link ResultSet} to the
+ * corresponding properties of the {@link Owner} class.
+ */
+public class JdbcOwnerRowMapper extends ColumnIndexRowMapper<Owner> {
+
+    public JdbcOwnerRowMapper() {
+        super("id", "first_name", "last_name", "address", "city", "telephone");
+    }
+
+    @Override
+    protected Owner mapRow(ResultSet rs, int[] columns) throws SQLException {
+        Owner owner = new Owner();
+        owner.setId(rs.getInt(columns[0]));
+        owner.setFirstName(rs.getString(columns[1]));
+        owner.setLastName(rs.getString(columns[2]));
+        owner.setAddress(rs.getString(columns[3]));
+        owner.setCity(rs.getString(columns[4]));
+        owner.setTelephone(rs.getString(columns[5]));
+        return owner;
+    }
+}
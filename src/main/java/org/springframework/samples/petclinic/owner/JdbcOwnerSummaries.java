@@ -0,0 +1,227 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+/**
+ * Maintains the <code>owner_summary</code> read table: one row per owner with the
+ * owner's own columns and the number and names of its pets, which is all the owner
+ * search results show. The repositories in this package refresh the rows of the owners
+ * they write, in the same transaction, so a page of search results is served by
+ * a single indexed query on <code>(last_name, owner_id)</code>.
+ * <p>
+ * A refresh first locks the owners' rows, so concurrent writers of the same owner
+ * take turns and each reads the pets the previous one committed, and then
+ * replaces the summary rows with an upsert (<code>MERGE</code> on H2,
+ * <code>INSERT ... ON DUPLICATE KEY UPDATE</code> on MySQL), so readers never
+ * find an owner missing.
+ */
+final class JdbcOwnerSummaries {
+
+    /**
+     * Separates the pet names in <code>pet_names</code>; {@link PetValidator}
+     * rejects names that contain it, whether entered in the form or imported.
+     */
+    static final String PET_NAME_SEPARATOR = "\n";
+
+    static final String SELECT_SUMMARY = "SELECT owner_id, first_name, last_name, address, city, telephone, pet_count, pet_names FROM owner_summary";
+
+    private static final int OWNER_ID_BATCH_SIZE = 100;
+
+    private static final String COLUMNS = "owner_id, first_name, last_name, address, city, telephone, pet_count, pet_names";
+
+    private static final String MERGE_SUMMARY = "MERGE INTO owner_summary (" + COLUMNS
+            + ") KEY (owner_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPSERT_SUMMARY = "INSERT INTO owner_summary (" + COLUMNS
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE first_name = VALUES(first_name), "
+            + "last_name = VALUES(last_name), address = VALUES(address), city = VALUES(city), "
+            + "telephone = VALUES(telephone), pet_count = VALUES(pet_count), pet_names = VALUES(pet_names)";
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private volatile String upsertSql;
+
+    JdbcOwnerSummaries(NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    }
+
+    /**
+     * Lock the <code>owners</code> rows of the given owners until the end of the
+     * current transaction. Writers of pets call this before changing the
+     * <code>pets</code> table, so that their refresh sees the pets of any writer
+     * that locked the owner first.
+     */
+    void lock(Collection<Integer> ownerIds) throws DataAccessException {
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(ownerIds));
+        Collections.sort(ids);
+        for (int start = 0; start < ids.size(); start += OWNER_ID_BATCH_SIZE) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("ids", ids.subList(start, Math.min(start + OWNER_ID_BATCH_SIZE, ids.size())));
+            this.namedParameterJdbcTemplate.queryForList(
+                    "SELECT id FROM owners WHERE id IN (:ids) ORDER BY id FOR UPDATE", params, Integer.class);
+        }
+    }
+
+    /**
+     * Recompute the summary rows of the given owners from the <code>owners</code>
+     * and <code>pets</code> tables. Call it in the transaction that changed them.
+     */
+    void refresh(Collection<Integer> ownerIds) throws DataAccessException {
+        lock(ownerIds);
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(ownerIds));
+        for (int start = 0; start < ids.size(); start += OWNER_ID_BATCH_SIZE) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("ids", ids.subList(start, Math.min(start + OWNER_ID_BATCH_SIZE, ids.size())));
+            upsert(" WHERE id IN (:ids)", " WHERE owner_id IN (:ids)", params);
+        }
+    }
+
+    /**
+     * Recompute every summary row, for example when the table has just been
+     * created or the <code>owners</code> table was changed behind the
+     * application's back. Call it in a transaction, so that readers keep seeing
+     * the old rows until the new ones are committed.
+     */
+    void rebuild() throws DataAccessException {
+        this.namedParameterJdbcTemplate.getJdbcOperations().update("DELETE FROM owner_summary");
+        upsert("", "", new HashMap<>());
+    }
+
+    /**
+     * Return whether every owner has a summary row.
+     */
+    boolean isComplete() throws DataAccessException {
+        Map<String, Object> params = new HashMap<>();
+        Long owners = this.namedParameterJdbcTemplate.queryForObject("SELECT COUNT(*) FROM owners", params,
+                Long.class);
+        Long summaries = this.namedParameterJdbcTemplate.queryForObject("SELECT COUNT(*) FROM owner_summary",
+                params, Long.class);
+        return owners.equals(summaries);
+    }
+
+    private void upsert(String ownerWhere, String petWhere, Map<String, Object> params) {
+        final List<Owner> owners = this.namedParameterJdbcTemplate.query(
+                "SELECT id, first_name, last_name, address, city, telephone FROM owners" + ownerWhere, params,
+                new JdbcOwnerRowMapper());
+        if (owners.isEmpty()) {
+            return;
+        }
+        final Map<Integer, StringBuilder> petNames = new HashMap<>();
+        final Map<Integer, Integer> petCounts = new HashMap<>();
+        this.namedParameterJdbcTemplate.query("SELECT owner_id, name FROM pets" + petWhere + " ORDER BY id", params,
+                rs -> {
+                    StringBuilder names = petNames.computeIfAbsent(rs.getInt(1), id -> new StringBuilder());
+                    if (names.length() > 0) {
+                        names.append(PET_NAME_SEPARATOR);
+                    }
+                    names.append(rs.getString(2));
+                    petCounts.merge(rs.getInt(1), 1, Integer::sum);
+                });
+        this.namedParameterJdbcTemplate.getJdbcOperations().batchUpdate(upsertSql(),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Owner owner = owners.get(i);
+                        StringBuilder names = petNames.get(owner.getId());
+                        ps.setInt(1, owner.getId());
+                        ps.setString(2, owner.getFirstName());
+                        ps.setString(3, owner.getLastName());
+                        ps.setString(4, owner.getAddress());
+                        ps.setString(5, owner.getCity());
+                        ps.setString(6, owner.getTelephone());
+                        ps.setInt(7, petCounts.getOrDefault(owner.getId(), 0));
+                        ps.setString(8, names != null ? names.toString() : "");
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return owners.size();
+                    }
+                });
+    }
+
+    private String upsertSql() {
+        String sql = this.upsertSql;
+        if (sql == null) {
+            try {
+                String database = JdbcUtils.commonDatabaseName(JdbcUtils.extractDatabaseMetaData(
+                        this.namedParameterJdbcTemplate.getJdbcTemplate().getDataSource(),
+                        DatabaseMetaData::getDatabaseProductName));
+                sql = "H2".equals(database) ? MERGE_SUMMARY : UPSERT_SUMMARY;
+            }
+            catch (MetaDataAccessException ex) {
+                sql = UPSERT_SUMMARY;
+            }
+            this.upsertSql = sql;
+        }
+        return sql;
+    }
+
+    /**
+     * Maps a row of {@link #SELECT_SUMMARY} to an {@link Owner} whose pets carry
+     * their names only.
+     */
+    static final class SummaryRowMapper implements RowMapper<Owner> {
+
+        @Override
+        public Owner mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Owner owner = new Owner();
+            owner.setId(rs.getInt(1));
+            owner.setFirstName(rs.getString(2));
+            owner.setLastName(rs.getString(3));
+            owner.setAddress(rs.getString(4));
+            owner.setCity(rs.getString(5));
+            owner.setTelephone(rs.getString(6));
+            int petCount = rs.getInt(7);
+            String petNames = rs.getString(8);
+            int start = 0;
+            for (int i = 1; i <= petCount; i++) {
+                // the last pet takes the rest, should a name predating the validation
+                // contain the separator
+                int end = i < petCount ? petNames.indexOf(PET_NAME_SEPARATOR, start) : -1;
+                Pet pet = new Pet();
+                pet.setName(end >= 0 ? petNames.substring(start, end) : petNames.substring(start));
+                owner.addPet(pet);
+                if (end < 0) {
+                    break;
+                }
+                start = end + PET_NAME_SEPARATOR.length();
+            }
+            return owner;
+        }
+
+    }
+
+}
@@ -15,22 +15,31 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataRetrievalFailureException;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
-import org.springframework.samples.petclinic.model.EntityUtils;
+import org.springframework.samples.petclinic.model.JdbcBatchInsert;
+import org.springframework.samples.petclinic.model.JdbcIdAllocator;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
+import org.springframework.samples.petclinic.visit.JdbcVisitRowMapper;
+import org.springframework.samples.petclinic.visit.Visit;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * @author Ken Krebs
@@ -43,59 +52,176 @@ import org.springframework.stereotype.Repository;
 @Repository
 public class JdbcPetRepositoryImpl implements PetRepository {
 
+    private static final String UPDATE_PET = "UPDATE pets SET name=:name, birth_date=:birth_date, type_id=:type_id, "
+            + "owner_id=:owner_id WHERE id=:id";
+
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
-    private SimpleJdbcInsert insertPet;
+    private JdbcBatchInsert<Pet> insertPets;
+
+    private ReferenceDataRegistry referenceData;
+
+    private OwnerCache ownerCache;
 
-    private OwnerRepository ownerRepository;
+    private JdbcOwnerSummaries summaries;
+
+    private TransactionTemplate transactions;
 
     @Autowired
-    public JdbcPetRepositoryImpl(DataSource dataSource, OwnerRepository ownerRepository) {
+    public JdbcPetRepositoryImpl(DataSource dataSource, ReferenceDataRegistry referenceData,
+            OwnerCache ownerCache, JdbcIdAllocator idAllocator, PlatformTransactionManager transactionManager) {
         this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
 
-        this.insertPet = new SimpleJdbcInsert(dataSource).withTableName("pets")
-                .usingGeneratedKeyColumns("id");
+        this.insertPets = new JdbcBatchInsert<>(this.namedParameterJdbcTemplate.getJdbcOperations(), idAllocator,
+                "pets", "INSERT INTO pets (id, name, birth_date, type_id, owner_id) VALUES (?, ?, ?, ?, ?)",
+                (ps, pet) -> {
+                    ps.setString(2, pet.getName());
+                    ps.setObject(3, pet.getBirthDate());
+                    ps.setInt(4, pet.getType().getId());
+                    ps.setInt(5, pet.getOwner().getId());
+                });
+
+        this.referenceData = referenceData;
 
-        this.ownerRepository = ownerRepository;
+        this.ownerCache = ownerCache;
+
+        this.summaries = new JdbcOwnerSummaries(this.namedParameterJdbcTemplate);
+
+        this.transactions = new TransactionTemplate(transactionManager);
     }
 
     @Override
     public List<PetType> findPetTypes() throws DataAccessException {
-        Map<String, Object> params = new HashMap<>();
-        return this.namedParameterJdbcTemplate.query(
-                "SELECT id, name FROM types ORDER BY name", params,
-                BeanPropertyRowMapper.newInstance(PetType.class));
+        return this.referenceData.getPetTypes().getAll();
     }
 
+    /**
+     * Loads the {@link Pet} with the supplied <code>id</code>, its {@link Visit
+     * Visits} and the fields of its {@link Owner} with one join, so the cost does
+     * not depend on how many other pets the owner has. The owner is a reference
+     * only: its other pets are not loaded, so it holds just this pet. If the owner
+     * is in the {@link OwnerCache} the pet is taken from there instead, with an
+     * owner of the same shape.
+     */
     @Override
     public Pet findById(int id) throws DataAccessException {
-        Integer ownerId;
-        try {
-            Map<String, Object> params = new HashMap<>();
-            params.put("id", id);
-            ownerId = this.namedParameterJdbcTemplate.queryForObject(
-                    "SELECT owner_id FROM pets WHERE id=:id", params, Integer.class);
+        Integer ownerId = this.ownerCache.findOwnerIdByPetId(id);
+        if (ownerId != null) {
+            Owner owner = this.ownerCache.get(ownerId);
+            if (owner != null) {
+                for (Pet pet : owner.getPetsInternal()) {
+                    if (pet.getId() == id) {
+                        Owner reference = new Owner();
+                        reference.setId(owner.getId());
+                        reference.setFirstName(owner.getFirstName());
+                        reference.setLastName(owner.getLastName());
+                        reference.setAddress(owner.getAddress());
+                        reference.setCity(owner.getCity());
+                        reference.setTelephone(owner.getTelephone());
+                        reference.addPet(pet);
+                        return pet;
+                    }
+                }
+            }
         }
-        catch (EmptyResultDataAccessException ex) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", id);
+        Pet pet = this.namedParameterJdbcTemplate.query("SELECT pets.id, name, birth_date, type_id, owner_id, "
+                + "first_name, last_name, address, city, telephone, visits.id as visit_id, visit_date, description "
+                + "FROM pets INNER JOIN owners ON owners.id = owner_id LEFT OUTER JOIN visits ON pets.id = pet_id "
+                + "WHERE pets.id=:id ORDER BY visit_date DESC, visits.id DESC", params, (ResultSetExtractor<Pet>) rs -> {
+                    RowMapper<Visit> visitMapper = new JdbcVisitRowMapper();
+                    Pet found = null;
+                    for (int row = 0; rs.next(); row++) {
+                        if (found == null) {
+                            found = new JdbcPetRowMapper().mapRow(rs, row);
+                            // columns 5 to 10 are the owner's
+                            Owner owner = new Owner();
+                            owner.setId(rs.getInt(5));
+                            owner.setFirstName(rs.getString(6));
+                            owner.setLastName(rs.getString(7));
+                            owner.setAddress(rs.getString(8));
+                            owner.setCity(rs.getString(9));
+                            owner.setTelephone(rs.getString(10));
+                            owner.addPet(found);
+                        }
+                        if (rs.getObject(11) != null) {
+                            found.addVisit(visitMapper.mapRow(rs, row));
+                        }
+                    }
+                    return found;
+                });
+        if (pet == null) {
             throw new DataRetrievalFailureException("Cannot find Pet: " + id);
         }
-        Owner owner = this.ownerRepository.findById(ownerId);
-        return EntityUtils.getById(owner.getPets(), Pet.class, id);
+        pet.setType(this.referenceData.getPetTypes().getById(pet.getTypeId()));
+        return pet;
     }
 
     @Override
-    public void save(Pet pet) throws DataAccessException {
-        if (pet.isNew()) {
-            Number newKey = this.insertPet
-                    .executeAndReturnKey(createPetParameterSource(pet));
-            pet.setId(newKey.intValue());
+    public boolean existsByIdAndOwnerId(int id, int ownerId) throws DataAccessException {
+        Integer cachedOwnerId = this.ownerCache.findOwnerIdByPetId(id);
+        if (cachedOwnerId != null) {
+            return cachedOwnerId == ownerId;
         }
-        else {
-            this.namedParameterJdbcTemplate.update(
-                    "UPDATE pets SET name=:name, birth_date=:birth_date, type_id=:type_id, "
-                            + "owner_id=:owner_id WHERE id=:id",
-                    createPetParameterSource(pet));
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", id);
+        params.put("ownerId", ownerId);
+        return !this.namedParameterJdbcTemplate
+                .queryForList("SELECT 1 FROM pets WHERE id=:id AND owner_id=:ownerId", params, Integer.class)
+                .isEmpty();
+    }
+
+    /**
+     * Saves the pet and refreshes its owner's summary in one transaction, locking
+     * the owner first so that concurrent saves for the same owner take turns.
+     */
+    @Override
+    public void save(final Pet pet) throws DataAccessException {
+        this.transactions.executeWithoutResult(status -> {
+            this.summaries.lock(Collections.singleton(pet.getOwner().getId()));
+            if (pet.isNew()) {
+                this.insertPets.insert(pet);
+            }
+            else {
+                this.namedParameterJdbcTemplate.update(UPDATE_PET, createPetParameterSource(pet));
+                this.ownerCache.evictByPetId(pet.getId());
+            }
+            this.ownerCache.evict(pet.getOwner().getId());
+            this.summaries.refresh(Collections.singleton(pet.getOwner().getId()));
+        });
+    }
+
+    @Override
+    public void saveAll(final List<Pet> pets, final int batchSize) throws DataAccessException {
+        Set<Integer> ownerIds = new LinkedHashSet<>();
+        for (Pet pet : pets) {
+            ownerIds.add(pet.getOwner().getId());
         }
+        this.transactions.executeWithoutResult(status -> {
+            this.summaries.lock(ownerIds);
+            List<Pet> inserts = new ArrayList<>();
+            List<MapSqlParameterSource> updates = new ArrayList<>();
+            for (Pet pet : pets) {
+                if (pet.isNew()) {
+                    inserts.add(pet);
+                }
+                else {
+                    updates.add(createPetParameterSource(pet));
+                    this.ownerCache.evictByPetId(pet.getId());
+                }
+            }
+            this.insertPets.insert(inserts, batchSize);
+            for (int start = 0; start < updates.size(); start += batchSize) {
+                this.namedParameterJdbcTemplate.batchUpdate(UPDATE_PET, updates
+                        .subList(start, Math.min(start + batchSize, updates.size()))
+                        .toArray(new MapSqlParameterSource[0]));
+            }
+            for (Integer ownerId : ownerIds) {
+                this.ownerCache.evict(ownerId);
+            }
+            this.summaries.refresh(ownerIds);
+        });
     }
 
     /**
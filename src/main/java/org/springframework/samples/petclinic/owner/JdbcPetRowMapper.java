@@ -20,21 +20,26 @@ import java.sql.SQLException;
 import java.time.LocalDate;
 
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.samples.petclinic.model.ColumnIndexRowMapper;
 
 /**
  * {@link RowMapper} implementation mapping data from a {@link ResultSet} to the
  * corresponding properties of the {@link Pet} class.
  */
-public class JdbcPetRowMapper implements RowMapper<Pet> {
+public class JdbcPetRowMapper extends ColumnIndexRowMapper<Pet> {
+
+    public JdbcPetRowMapper() {
+        super("pets.id", "name", "birth_date", "type_id", "owner_id");
+    }
 
     @Override
-    public Pet mapRow(ResultSet rs, int rownum) throws SQLException {
+    protected Pet mapRow(ResultSet rs, int[] columns) throws SQLException {
         Pet pet = new Pet();
-        pet.setId(rs.getInt("pets.id"));
-        pet.setName(rs.getString("name"));
-        pet.setBirthDate(rs.getObject("birth_date", LocalDate.class));
-        pet.setTypeId(rs.getInt("type_id"));
-        pet.setOwnerId(rs.getInt("owner_id"));
+        pet.setId(rs.getInt(columns[0]));
+        pet.setName(rs.getString(columns[1]));
+        pet.setBirthDate(rs.getObject(columns[2], LocalDate.class));
+        pet.setTypeId(rs.getInt(columns[3]));
+        pet.setOwnerId(rs.getInt(columns[4]));
         return pet;
     }
 }
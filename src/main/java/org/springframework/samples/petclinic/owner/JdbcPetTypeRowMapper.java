@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.samples.petclinic.model.ColumnIndexRowMapper;
+
+/**
+ * {@link RowMapper} implementation mapping data from a {@link ResultSet} to the
+ * corresponding properties of the {@link PetType} class.
+ */
+public class JdbcPetTypeRowMapper extends ColumnIndexRowMapper<PetType> {
+
+    public JdbcPetTypeRowMapper() {
+        super("id", "name");
+    }
+
+    @Override
+    protected PetType mapRow(ResultSet rs, int[] columns) throws SQLException {
+        PetType type = new PetType();
+        type.setId(rs.getInt(columns[0]));
+        type.setName(rs.getString(columns[1]));
+        return type;
+    }
+}
@@ -15,39 +15,20 @@
  */
 package org.springframework.samples.petclinic.owner;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.samples.petclinic.model.NestedResultSetExtractor;
 import org.springframework.samples.petclinic.visit.JdbcVisitRowMapper;
-import org.springframework.samples.petclinic.visit.Visit;
 
 /**
  * {@link ResultSetExtractor} implementation by using the
- * {@link OneToManyResultSetExtractor} of Spring Data Core JDBC Extensions.
+ * {@link NestedResultSetExtractor} for the rows of <code>pets</code> left joined
+ * with <code>visits</code>, ordered by <code>pets.id</code>.
  */
-public class JdbcPetVisitExtractor extends OneToManyResultSetExtractor<Pet, Visit, Integer> {
+public class JdbcPetVisitExtractor extends NestedResultSetExtractor<Pet> {
 
     public JdbcPetVisitExtractor() {
-        super(new JdbcPetRowMapper(), new JdbcVisitRowMapper());
-    }
-
-    @Override
-    protected Integer mapPrimaryKey(ResultSet rs) throws SQLException {
-        return rs.getInt("pets.id");
+        super(NestedResultSetExtractor.root("pets.id", new JdbcPetRowMapper()).nest("visit_id",
+                new JdbcVisitRowMapper(), Pet::addVisit));
     }
 
-    @Override
-    protected Integer mapForeignKey(ResultSet rs) throws SQLException {
-        if (rs.getObject("visits.pet_id") == null) {
-            return null;
-        } else {
-            return rs.getInt("visits.pet_id");
-        }
-    }
-
-    @Override
-    protected void addChild(Pet root, Visit child) {
-        root.addVisit(child);
-    }
 }
@@ -17,15 +17,17 @@ package org.springframework.samples.petclinic.owner;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import javax.validation.constraints.Digits;
 import javax.validation.constraints.NotEmpty;
 
-import org.springframework.beans.support.MutableSortDefinition;
-import org.springframework.beans.support.PropertyComparator;
 import org.springframework.core.style.ToStringCreator;
 import org.springframework.samples.petclinic.model.Person;
 
@@ -38,6 +40,10 @@ import org.springframework.samples.petclinic.model.Person;
  * @author Michael Isvy
  */
 public class Owner extends Person {
+
+    static final Comparator<Pet> PETS_BY_NAME = Comparator.comparing(Pet::getName,
+            Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+
     @NotEmpty
     private String address;
 
@@ -50,6 +56,18 @@ public class Owner extends Person {
 
     private Set<Pet> pets;
 
+    /**
+     * The pets by case-folded name, kept in step by {@link #addPet(Pet)} and
+     * {@link Pet#setName(String)}, so a lookup is a single hash probe.
+     */
+    private final Map<String, List<Pet>> petsByName = new HashMap<>();
+
+    /**
+     * The pets sorted by name as returned by {@link #getPets()}, or <code>null</code>
+     * once a pet has been added or renamed.
+     */
+    private transient volatile List<Pet> sortedPets;
+
     public String getAddress() {
         return this.address;
     }
@@ -83,20 +101,65 @@ public class Owner extends Person {
 
     protected void setPetsInternal(Set<Pet> pets) {
         this.pets = pets;
+        this.sortedPets = null;
+        this.petsByName.clear();
+        if (pets != null) {
+            for (Pet pet : pets) {
+                indexPet(pet, pet.getName());
+            }
+        }
     }
 
     public List<Pet> getPets() {
-        List<Pet> sortedPets = new ArrayList<>(getPetsInternal());
-        PropertyComparator.sort(sortedPets,
-                new MutableSortDefinition("name", true, true));
-        return Collections.unmodifiableList(sortedPets);
+        List<Pet> sorted = this.sortedPets;
+        if (sorted == null) {
+            List<Pet> pets = new ArrayList<>(getPetsInternal());
+            pets.sort(PETS_BY_NAME);
+            sorted = Collections.unmodifiableList(pets);
+            this.sortedPets = sorted;
+        }
+        return sorted;
     }
 
     public void addPet(Pet pet) {
-        getPetsInternal().add(pet);
+        if (getPetsInternal().add(pet)) {
+            indexPet(pet, pet.getName());
+            this.sortedPets = null;
+        }
         pet.setOwner(this);
     }
 
+    /**
+     * Move a pet of this owner to its new name in the name index.
+     */
+    void renamePet(Pet pet, String oldName, String newName) {
+        if (getPetsInternal().contains(pet)) {
+            unindexPet(pet, oldName);
+            indexPet(pet, newName);
+            this.sortedPets = null;
+        }
+    }
+
+    private void indexPet(Pet pet, String name) {
+        if (name != null) {
+            this.petsByName.computeIfAbsent(nameKey(name), key -> new ArrayList<>(1)).add(pet);
+        }
+    }
+
+    private void unindexPet(Pet pet, String name) {
+        List<Pet> named = name != null ? this.petsByName.get(nameKey(name)) : null;
+        if (named != null) {
+            named.remove(pet);
+            if (named.isEmpty()) {
+                this.petsByName.remove(nameKey(name));
+            }
+        }
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Return the Pet with the given name, or null if none found for this Owner.
      *
@@ -114,12 +177,11 @@ public class Owner extends Person {
      * @return true if pet name is already in use
      */
     public Pet getPet(String name, boolean ignoreNew) {
-        name = name.toLowerCase();
-        for (Pet pet : getPetsInternal()) {
-            if (!ignoreNew || !pet.isNew()) {
-                String compName = pet.getName();
-                compName = compName.toLowerCase();
-                if (compName.equals(name)) {
+        List<Pet> named = name != null ? this.petsByName.get(nameKey(name)) : null;
+        if (named != null) {
+            for (int i = 0; i < named.size(); i++) {
+                Pet pet = named.get(i);
+                if (!ignoreNew || !pet.isNew()) {
                     return pet;
                 }
             }
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.samples.petclinic.visit.Visit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bounded, least-recently-used cache of whole {@link Owner} aggregates (owner, pets
+ * and visits) keyed by owner id. Callers always get a private copy, so they can
+ * modify what they read without affecting the cache.
+ * <p>
+ * Writers call {@link #evict(Integer)} or {@link #evictByPetId(Integer)}. When a
+ * transaction is active the entry is evicted again after it completes, and nothing
+ * read inside a transaction is cached, so uncommitted state never leaks to other
+ * readers. The size limit is <code>petclinic.owner-cache.size</code> (0 disables
+ * the cache).
+ */
+@Component
+public class OwnerCache implements MeterBinder {
+
+    static final int DEFAULT_SIZE = 1000;
+
+    private final int maxSize;
+
+    private final Map<Integer, Owner> owners;
+
+    private final Map<Integer, Integer> ownerIdsByPetId = new HashMap<>();
+
+    private long invalidations;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    @Autowired
+    public OwnerCache(Environment environment) {
+        this(environment.getProperty("petclinic.owner-cache.size", Integer.class, DEFAULT_SIZE));
+    }
+
+    OwnerCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.owners = new LinkedHashMap<Integer, Owner>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Owner> eldest) {
+                if (size() > OwnerCache.this.maxSize) {
+                    forgetPets(eldest.getValue());
+                    OwnerCache.this.evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Return a copy of the cached owner with the given id, or <code>null</code> if
+     * it is not cached.
+     */
+    public synchronized Owner get(int id) {
+        Owner owner = this.owners.get(id);
+        if (owner == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return copy(owner);
+    }
+
+    /**
+     * Return the id of the owner of the given pet, if that owner is cached.
+     */
+    public synchronized Integer findOwnerIdByPetId(int petId) {
+        return this.ownerIdsByPetId.get(petId);
+    }
+
+    /**
+     * Return a token to pass to {@link #put(Owner, long)} once the owner has been
+     * loaded, so that a load racing with a write is not cached.
+     */
+    public synchronized long startLoad() {
+        return this.invalidations;
+    }
+
+    /**
+     * Cache a copy of a freshly loaded owner, unless a write happened since the
+     * load started or the load ran inside a transaction.
+     */
+    public synchronized void put(Owner owner, long loadToken) {
+        if (this.maxSize <= 0 || loadToken != this.invalidations
+                || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        Owner copy = copy(owner);
+        forgetPets(this.owners.put(copy.getId(), copy));
+        for (Pet pet : copy.getPetsInternal()) {
+            this.ownerIdsByPetId.put(pet.getId(), copy.getId());
+        }
+    }
+
+    /**
+     * Evict the owner with the given id, now and when the current transaction
+     * completes. Loads that started earlier are not cached either, even when the
+     * id is <code>null</code> because the owner is not known.
+     */
+    public void evict(final Integer ownerId) {
+        remove(ownerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(ownerId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Evict the owner of the given pet, if it is cached. A load of any owner that
+     * started earlier is not cached, since it may have read the pet before the
+     * write.
+     */
+    public void evictByPetId(Integer petId) {
+        if (petId != null) {
+            evict(findOwnerIdByPetId(petId));
+        }
+    }
+
+    public synchronized void clear() {
+        this.invalidations++;
+        this.owners.clear();
+        this.ownerIdsByPetId.clear();
+    }
+
+    public synchronized int size() {
+        return this.owners.size();
+    }
+
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("cache", "owners");
+        FunctionCounter.builder("cache.gets", this, OwnerCache::getHitCount)
+                .tags(tags).tag("result", "hit").description("The number of times cache lookup methods have returned a cached value.")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", this, OwnerCache::getMissCount)
+                .tags(tags).tag("result", "miss").description("The number of times cache lookup methods have returned an uncached (newly loaded) value.")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", this, OwnerCache::getEvictionCount)
+                .tags(tags).description("The number of times the cache was evicted.")
+                .register(registry);
+        Gauge.builder("cache.size", this, OwnerCache::size)
+                .tags(tags).description("The number of entries in this cache.")
+                .register(registry);
+    }
+
+    private synchronized void remove(Integer ownerId) {
+        this.invalidations++;
+        if (ownerId != null) {
+            forgetPets(this.owners.remove(ownerId));
+        }
+    }
+
+    private void forgetPets(Owner owner) {
+        if (owner != null) {
+            for (Pet pet : owner.getPetsInternal()) {
+                this.ownerIdsByPetId.remove(pet.getId());
+            }
+        }
+    }
+
+    private static Owner copy(Owner source) {
+        Owner owner = new Owner();
+        owner.setId(source.getId());
+        owner.setFirstName(source.getFirstName());
+        owner.setLastName(source.getLastName());
+        owner.setAddress(source.getAddress());
+        owner.setCity(source.getCity());
+        owner.setTelephone(source.getTelephone());
+        for (Pet sourcePet : source.getPetsInternal()) {
+            Pet pet = new Pet();
+            pet.setId(sourcePet.getId());
+            pet.setName(sourcePet.getName());
+            pet.setBirthDate(sourcePet.getBirthDate());
+            pet.setType(sourcePet.getType());
+            pet.setTypeId(sourcePet.getTypeId());
+            pet.setOwnerId(sourcePet.getOwnerId());
+            for (Visit sourceVisit : sourcePet.getVisitsInternal()) {
+                Visit visit = new Visit();
+                visit.setId(sourceVisit.getId());
+                visit.setDate(sourceVisit.getDate());
+                visit.setDescription(sourceVisit.getDescription());
+                pet.addVisit(visit);
+            }
+            owner.addPet(pet);
+        }
+        return owner;
+    }
+
+}
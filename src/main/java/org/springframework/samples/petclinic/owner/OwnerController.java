@@ -15,13 +15,17 @@
  */
 package org.springframework.samples.petclinic.owner;
 
-import java.util.Collection;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.Validator;
 import org.springframework.web.bind.ServletRequestDataBinder;
@@ -40,14 +44,28 @@ class OwnerController {
 
     private static final String VIEWS_OWNER_CREATE_OR_UPDATE_FORM = "owners/createOrUpdateOwnerForm";
 
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final int DEFAULT_SUGGESTIONS = 10;
+
+    private static final int MAX_SUGGESTIONS = 50;
+
+    private static final int DEFAULT_EXPORT_FETCH_SIZE = 500;
+
     private final OwnerRepository owners;
 
     private Validator validator;
 
+    private final int exportFetchSize;
+
     public OwnerController(OwnerRepository clinicService,
-            @Qualifier("mvcValidator") Validator validator) {
+            @Qualifier("mvcValidator") Validator validator, Environment environment) {
         this.owners = clinicService;
         this.validator = validator;
+        this.exportFetchSize = environment.getProperty("petclinic.export.fetch-size",
+                Integer.class, DEFAULT_EXPORT_FETCH_SIZE);
     }
 
     @Bean
@@ -55,6 +73,8 @@ class OwnerController {
         return RouterFunctions.route().path("/owners", builder -> builder //
                 .GET("", this::processFindForm) //
                 .GET("/find", this::initFindForm) //
+                .GET("/suggest", this::suggestLastNames) //
+                .GET("/export", this::exportOwners) //
                 .GET("/new", this::initCreationForm) //
                 .POST("/new", this::processCreationForm) //
                 .GET("/{ownerId}/edit", this::initUpdateOwnerForm)
@@ -84,36 +104,88 @@ class OwnerController {
         BindingResult result = binder.getBindingResult();
         model.put("owner", owner);
         model.put("org.springframework.validation.BindingResult.owner", result);
-        return ServerResponse.ok().render(processFindForm(owner, result, model), model);
+        return ServerResponse.ok().render(processFindForm(owner, result, model, request),
+                model);
     }
 
     private String processFindForm(Owner owner, BindingResult result,
-            Map<String, Object> model) {
+            Map<String, Object> model, ServerRequest request) {
 
         // allow parameterless GET request for /owners to return all records
         if (owner.getLastName() == null) {
             owner.setLastName(""); // empty string signifies broadest possible search
         }
 
-        // find owners by last name
-        Collection<Owner> results = this.owners.findByLastName(owner.getLastName());
-        if (results.isEmpty()) {
+        // find one page of owners by last name, counting them only on the first page;
+        // the list only shows owner columns and pet names, which the summary table has
+        int size = Math.min(Math.max(intParam(request, "size").orElse(DEFAULT_PAGE_SIZE), 1),
+                MAX_PAGE_SIZE);
+        OwnerPage.Cursor after = null;
+        Optional<Integer> afterId = intParam(request, "afterId");
+        if (afterId.isPresent() && request.param("afterName").isPresent()) {
+            after = new OwnerPage.Cursor(request.param("afterName").get(), afterId.get());
+        }
+        OwnerPage results = this.owners.findByLastName(owner.getLastName(), after, size,
+                after == null, OwnerFetchPlan.SUMMARY);
+        if (after == null && results.isEmpty()) {
             // no owners found
             result.rejectValue("lastName", "notFound", "not found");
             return "owners/findOwners";
         }
-        else if (results.size() == 1) {
+        else if (after == null && results.getContent().size() == 1 && !results.hasNext()) {
             // 1 owner found
-            owner = results.iterator().next();
+            owner = results.getContent().get(0);
             return "redirect:/owners/" + owner.getId();
         }
         else {
             // multiple owners found
-            model.put("selections", results);
+            Long total = results.getTotal() != null ? results.getTotal()
+                    : intParam(request, "total").map(Long::valueOf).orElse(null);
+            model.put("selections", results.getContent());
+            model.put("page", results);
+            model.put("pageNumber", intParam(request, "page").orElse(1));
+            model.put("total", total);
+            model.put("pageCount", total == null ? null : (total + size - 1) / size);
             return "owners/ownersList";
         }
     }
 
+    private ServerResponse suggestLastNames(ServerRequest request) {
+        int limit = Math.min(Math.max(intParam(request, "limit").orElse(DEFAULT_SUGGESTIONS), 1),
+                MAX_SUGGESTIONS);
+        return ServerResponse.ok().body(this.owners
+                .findLastNamesStartingWith(request.param("prefix").orElse(""), limit));
+    }
+
+    private ServerResponse exportOwners(ServerRequest request) {
+        OwnerExportFormat format = OwnerExportFormat.forName(request.param("format").orElse("ndjson"));
+        if (format == null) {
+            return ServerResponse.badRequest().build();
+        }
+        return ServerResponse.ok().contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"owners." + format.getName() + "\"")
+                .build((servletRequest, servletResponse) -> {
+                    try (OwnerExportFormat.OwnerWriter writer = format
+                            .openWriter(servletResponse.getOutputStream())) {
+                        this.owners.exportAll(this.exportFetchSize, writer);
+                    }
+                    catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    return null;
+                });
+    }
+
+    private Optional<Integer> intParam(ServerRequest request, String name) {
+        try {
+            return request.param(name).filter(value -> !value.isEmpty()).map(Integer::valueOf);
+        }
+        catch (NumberFormatException ex) {
+            return Optional.empty();
+        }
+    }
+
     private ServerResponse initCreationForm(ServerRequest request) {
         Map<String, Object> model = new HashMap<>();
         Owner owner = new Owner();
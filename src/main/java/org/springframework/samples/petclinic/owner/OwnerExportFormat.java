@@ -0,0 +1,464 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.visit.Visit;
+
+/**
+ * Formats for the bulk owner export and import. Each format writes or reads one
+ * {@link Owner} (with its pets and visits) at a time, so owners can be streamed
+ * between the database and an HTTP body. Anything written by the export can be
+ * read back by the import; ids and visits are ignored when reading.
+ */
+enum OwnerExportFormat {
+
+    /**
+     * One JSON document per owner and line, with the pets and visits nested.
+     */
+    NDJSON("ndjson", new MediaType("application", "x-ndjson", StandardCharsets.UTF_8)) {
+        @Override
+        OwnerWriter openWriter(OutputStream out) throws IOException {
+            JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // each line ends with a newline, so no space between root values
+            json.setRootValueSeparator(null);
+            return new OwnerWriter(json) {
+                @Override
+                void write(Owner owner) throws IOException {
+                    json.writeStartObject();
+                    json.writeNumberField("id", owner.getId());
+                    json.writeStringField("firstName", owner.getFirstName());
+                    json.writeStringField("lastName", owner.getLastName());
+                    json.writeStringField("address", owner.getAddress());
+                    json.writeStringField("city", owner.getCity());
+                    json.writeStringField("telephone", owner.getTelephone());
+                    json.writeArrayFieldStart("pets");
+                    for (Pet pet : owner.getPets()) {
+                        json.writeStartObject();
+                        json.writeNumberField("id", pet.getId());
+                        json.writeStringField("name", pet.getName());
+                        json.writeStringField("birthDate", text(pet.getBirthDate()));
+                        json.writeStringField("type", pet.getType() == null ? null : pet.getType().getName());
+                        json.writeArrayFieldStart("visits");
+                        for (Visit visit : pet.getVisits()) {
+                            json.writeStartObject();
+                            json.writeNumberField("id", visit.getId());
+                            json.writeStringField("date", text(visit.getDate()));
+                            json.writeStringField("description", visit.getDescription());
+                            json.writeEndObject();
+                        }
+                        json.writeEndArray();
+                        json.writeEndObject();
+                    }
+                    json.writeEndArray();
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+            };
+        }
+
+        @Override
+        OwnerReader openReader(InputStream in) throws IOException {
+            JsonParser json = JSON_FACTORY.createParser(in);
+            return () -> {
+                JsonToken token = json.nextToken();
+                if (token == null) {
+                    return null;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected an owner object at " + json.getCurrentLocation());
+                }
+                Owner owner = new Owner();
+                while (json.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = json.getCurrentName();
+                    json.nextToken();
+                    if ("pets".equals(field) && json.currentToken() == JsonToken.START_ARRAY) {
+                        while (json.nextToken() == JsonToken.START_OBJECT) {
+                            Pet pet = new Pet();
+                            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                                String petField = json.getCurrentName();
+                                json.nextToken();
+                                setPetField(pet, petField, json.getValueAsString());
+                                json.skipChildren();
+                            }
+                            owner.addPet(pet);
+                        }
+                    }
+                    else {
+                        setOwnerField(owner, field, json.getValueAsString());
+                        json.skipChildren();
+                    }
+                }
+                return owner;
+            };
+        }
+    },
+
+    /**
+     * One line per visit (or per pet without visits, or per owner without pets),
+     * repeating the owner and pet columns.
+     */
+    CSV("csv", new MediaType("text", "csv", StandardCharsets.UTF_8)) {
+        @Override
+        OwnerWriter openWriter(OutputStream out) throws IOException {
+            Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            csv.write("owner_id,first_name,last_name,address,city,telephone,"
+                    + "pet_id,pet_name,birth_date,type,visit_id,visit_date,description\r\n");
+            return new OwnerWriter(csv) {
+                @Override
+                void write(Owner owner) throws IOException {
+                    if (owner.getPets().isEmpty()) {
+                        writeRow(owner, null, null);
+                    }
+                    for (Pet pet : owner.getPets()) {
+                        if (pet.getVisits().isEmpty()) {
+                            writeRow(owner, pet, null);
+                        }
+                        for (Visit visit : pet.getVisits()) {
+                            writeRow(owner, pet, visit);
+                        }
+                    }
+                }
+
+                private void writeRow(Owner owner, Pet pet, Visit visit) throws IOException {
+                    writeField(owner.getId());
+                    writeField(owner.getFirstName());
+                    writeField(owner.getLastName());
+                    writeField(owner.getAddress());
+                    writeField(owner.getCity());
+                    writeField(owner.getTelephone());
+                    writeField(pet == null ? null : pet.getId());
+                    writeField(pet == null ? null : pet.getName());
+                    writeField(pet == null ? null : text(pet.getBirthDate()));
+                    writeField(pet == null || pet.getType() == null ? null : pet.getType().getName());
+                    writeField(visit == null ? null : visit.getId());
+                    writeField(visit == null ? null : text(visit.getDate()));
+                    csv.write(escape(visit == null ? null : visit.getDescription()));
+                    csv.write("\r\n");
+                }
+
+                private void writeField(Object value) throws IOException {
+                    csv.write(escape(value == null ? null : value.toString()));
+                    csv.write(',');
+                }
+            };
+        }
+
+        @Override
+        OwnerReader openReader(InputStream in) throws IOException {
+            return new CsvOwnerReader(
+                    new CsvRecordReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))));
+        }
+    };
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String name;
+
+    private final MediaType mediaType;
+
+    OwnerExportFormat(String name, MediaType mediaType) {
+        this.name = name;
+        this.mediaType = mediaType;
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    MediaType getMediaType() {
+        return this.mediaType;
+    }
+
+    /**
+     * Start writing owners to the given stream. Closing the returned writer flushes
+     * it but leaves the stream open.
+     */
+    abstract OwnerWriter openWriter(OutputStream out) throws IOException;
+
+    /**
+     * Start reading owners from the given stream. Pet types are returned as
+     * unsaved {@link PetType PetTypes} that only carry the type name.
+     */
+    abstract OwnerReader openReader(InputStream in) throws IOException;
+
+    /**
+     * Return the format with the given name (ignoring case), or <code>null</code>.
+     */
+    static OwnerExportFormat forName(String name) {
+        for (OwnerExportFormat format : values()) {
+            if (format.name.equals(name.toLowerCase(Locale.ROOT))) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private static void setOwnerField(Owner owner, String field, String value) {
+        switch (field) {
+        case "firstName":
+        case "first_name":
+            owner.setFirstName(value);
+            break;
+        case "lastName":
+        case "last_name":
+            owner.setLastName(value);
+            break;
+        case "address":
+            owner.setAddress(value);
+            break;
+        case "city":
+            owner.setCity(value);
+            break;
+        case "telephone":
+            owner.setTelephone(value);
+            break;
+        default:
+        }
+    }
+
+    private static void setPetField(Pet pet, String field, String value) {
+        switch (field) {
+        case "name":
+        case "pet_name":
+            pet.setName(value);
+            break;
+        case "birthDate":
+        case "birth_date":
+            try {
+                pet.setBirthDate(value == null ? null : LocalDate.parse(value));
+            }
+            catch (DateTimeParseException ex) {
+                // left empty, so that validation rejects the pet
+            }
+            break;
+        case "type":
+            if (value != null) {
+                PetType type = new PetType();
+                type.setName(value);
+                pet.setType(type);
+            }
+            break;
+        default:
+        }
+    }
+
+    private static String text(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reads owners one at a time.
+     */
+    interface OwnerReader {
+
+        /**
+         * Return the next owner, or <code>null</code> at the end of the input.
+         */
+        Owner read() throws IOException;
+
+    }
+
+    /**
+     * Groups consecutive CSV records with the same <code>owner_id</code> (or every
+     * record, if there is no such column) into one owner.
+     */
+    private static final class CsvOwnerReader implements OwnerReader {
+
+        private final CsvRecordReader records;
+
+        private final List<String> header;
+
+        private List<String> pending;
+
+        private CsvOwnerReader(CsvRecordReader records) throws IOException {
+            this.records = records;
+            this.header = records.read();
+            this.pending = this.header == null ? null : records.read();
+        }
+
+        @Override
+        public Owner read() throws IOException {
+            if (this.pending == null) {
+                return null;
+            }
+            List<String> record = this.pending;
+            String ownerKey = field(record, "owner_id");
+            Owner owner = new Owner();
+            for (int i = 0; i < this.header.size(); i++) {
+                setOwnerField(owner, this.header.get(i), field(record, i));
+            }
+            Map<String, Pet> pets = new HashMap<>();
+            do {
+                String petKey = field(record, "pet_id") != null ? field(record, "pet_id")
+                        : field(record, "pet_name");
+                if (petKey != null && !pets.containsKey(petKey)) {
+                    Pet pet = new Pet();
+                    for (int i = 0; i < this.header.size(); i++) {
+                        setPetField(pet, this.header.get(i), field(record, i));
+                    }
+                    pets.put(petKey, pet);
+                    owner.addPet(pet);
+                }
+                record = this.pending = this.records.read();
+            }
+            while (record != null && ownerKey != null && ownerKey.equals(field(record, "owner_id")));
+            return owner;
+        }
+
+        private String field(List<String> record, String column) {
+            return field(record, this.header.indexOf(column));
+        }
+
+        private static String field(List<String> record, int index) {
+            if (index < 0 || index >= record.size() || record.get(index).isEmpty()) {
+                return null;
+            }
+            return record.get(index);
+        }
+
+    }
+
+    /**
+     * Minimal RFC 4180 reader: comma separated, optionally double-quoted fields,
+     * with <code>""</code> for a quote inside a quoted field. Blank lines are skipped.
+     */
+    private static final class CsvRecordReader {
+
+        private final Reader reader;
+
+        private CsvRecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        List<String> read() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int c = this.reader.read();
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted CSV field");
+                    }
+                    if (c == '"') {
+                        c = this.reader.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    field.append((char) c);
+                }
+                else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                }
+                else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                }
+                else if (c == '\n' || c == -1) {
+                    if (!fields.isEmpty() || field.length() > 0) {
+                        fields.add(field.toString());
+                        return fields;
+                    }
+                    if (c == -1) {
+                        return null;
+                    }
+                }
+                else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = this.reader.read();
+            }
+        }
+
+    }
+
+    /**
+     * Writes owners one at a time. As a {@link Consumer} it rethrows I/O failures as
+     * {@link UncheckedIOException}.
+     */
+    abstract static class OwnerWriter implements Consumer<Owner>, Closeable {
+
+        private final Flushable flushable;
+
+        OwnerWriter(Flushable flushable) {
+            this.flushable = flushable;
+        }
+
+        abstract void write(Owner owner) throws IOException;
+
+        @Override
+        public void accept(Owner owner) {
+            try {
+                write(owner);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.flushable.flush();
+        }
+
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs the queries behind an owner lookup or search, timing each one as
+ * <code>petclinic.owner.query</code> (tagged with the query name) and the whole
+ * fetch as <code>petclinic.owner.fetch</code> (tagged with the mode). A single
+ * owner is read with one join, so only queries that cannot share a join, such as
+ * the page and total count of a search, are worth running concurrently.
+ * <p>
+ * When <code>petclinic.owner-fetch.parallel</code> is set such queries are started
+ * concurrently, on virtual threads where the JDK has them and otherwise on a
+ * bounded pool of <code>petclinic.owner-fetch.threads</code> threads that falls
+ * back to the calling thread when saturated. Each concurrent query takes its own
+ * connection from the pool, so queries inside a transaction always run on the
+ * calling thread to see the transaction's own changes.
+ */
+@Component
+public class OwnerFetchExecutor implements MeterBinder, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(OwnerFetchExecutor.class);
+
+    static final int DEFAULT_THREADS = 8;
+
+    private final ExecutorService executor;
+
+    private volatile MeterRegistry registry;
+
+    @Autowired
+    public OwnerFetchExecutor(Environment environment) {
+        this(environment.getProperty("petclinic.owner-fetch.parallel", Boolean.class, false)
+                ? createExecutor(environment.getProperty("petclinic.owner-fetch.threads", Integer.class,
+                        DEFAULT_THREADS))
+                : null);
+    }
+
+    /**
+     * @param executor the executor for concurrent queries, or <code>null</code> to
+     * run every query on the calling thread
+     */
+    OwnerFetchExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Return whether queries started now with {@link #submit} run concurrently.
+     */
+    public boolean isParallel() {
+        return this.executor != null && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * Start the given query, concurrently if {@link #isParallel()}, otherwise by
+     * running it straight away on the calling thread.
+     */
+    public <T> CompletableFuture<T> submit(final String query, final Supplier<T> supplier) {
+        if (!isParallel()) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                result.complete(time(query, supplier));
+            }
+            catch (RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+            return result;
+        }
+        return CompletableFuture.supplyAsync(() -> time(query, supplier), this.executor);
+    }
+
+    /**
+     * Wait for a query started with {@link #submit} and return its result,
+     * rethrowing its exception if it failed.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        }
+        catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Run the given query on the calling thread and record its duration.
+     */
+    public <T> T time(String query, Supplier<T> supplier) {
+        return record("petclinic.owner.query", "query", query, supplier);
+    }
+
+    /**
+     * Run a whole owner load on the calling thread and record its duration,
+     * tagged with whether its queries ran concurrently.
+     */
+    public <T> T timeFetch(Supplier<T> supplier) {
+        return record("petclinic.owner.fetch", "mode", isParallel() ? "parallel" : "sequential", supplier);
+    }
+
+    private <T> T record(String name, String tagKey, String tagValue, Supplier<T> supplier) {
+        MeterRegistry registry = this.registry;
+        if (registry == null) {
+            return supplier.get();
+        }
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        }
+        finally {
+            Timer.builder(name).tag(tagKey, tagValue).register(registry).record(System.nanoTime() - start,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void destroy() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Fetching owner details on virtual threads");
+            return executor;
+        }
+        catch (ReflectiveOperationException | LinkageError ex) {
+            // Not available before Java 21
+        }
+        logger.info("Fetching owner details on up to " + threads + " threads");
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("owner-fetch-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(threads * 4), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
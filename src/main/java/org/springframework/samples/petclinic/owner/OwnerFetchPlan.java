@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+/**
+ * How much of each {@link Owner} aggregate a query should read up front.
+ */
+public enum OwnerFetchPlan {
+
+    /**
+     * Read the owners and the names of their pets from the <code>owner_summary</code>
+     * table, in one query. The pets have a name only: no id, type or visits.
+     */
+    SUMMARY,
+
+    /**
+     * Read the owners and their pets; the visits of a pet are only read when
+     * {@link Pet#getVisits()} is first called, for all pets of the result at once.
+     */
+    PETS,
+
+    /**
+     * Read the owners, their pets and all of their visits.
+     */
+    PETS_AND_VISITS
+
+}
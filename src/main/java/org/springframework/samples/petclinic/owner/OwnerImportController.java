@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.Validator;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.RouterFunctions;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+/**
+ * Bulk import of owners and pets from a streamed CSV or NDJSON upload, in the
+ * formats written by the owner export.
+ */
+@Configuration(proxyBeanMethods = false)
+class OwnerImportController {
+
+    private static final Log logger = LogFactory.getLog(OwnerImportController.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    private final OwnerRepository owners;
+
+    private final PetRepository pets;
+
+    private final ReferenceDataRegistry referenceData;
+
+    private final Validator validator;
+
+    private final TransactionTemplate transactions;
+
+    private final int batchSize;
+
+    private final int chunkSize;
+
+    public OwnerImportController(OwnerRepository owners, PetRepository pets,
+            ReferenceDataRegistry referenceData, @Qualifier("mvcValidator") Validator validator,
+            PlatformTransactionManager transactionManager, Environment environment) {
+        this.owners = owners;
+        this.pets = pets;
+        this.referenceData = referenceData;
+        this.validator = validator;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.batchSize = environment.getProperty("petclinic.import.batch-size", Integer.class,
+                DEFAULT_BATCH_SIZE);
+        this.chunkSize = environment.getProperty("petclinic.import.chunk-size", Integer.class,
+                DEFAULT_CHUNK_SIZE);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> ownerImportRoutes() {
+        return RouterFunctions.route().POST("/owners/import", this::importOwners).build();
+    }
+
+    private ServerResponse importOwners(ServerRequest request) throws IOException {
+        OwnerExportFormat format = OwnerExportFormat.forName(request.param("format").orElse("ndjson"));
+        if (format == null) {
+            return ServerResponse.badRequest().build();
+        }
+        OwnerImporter importer = new OwnerImporter(this.owners, this.pets,
+                this.referenceData.getPetTypes(), this.validator, this.transactions, this.batchSize,
+                this.chunkSize);
+        OwnerImporter.Result result = importer
+                .importOwners(format.openReader(request.servletRequest().getInputStream()));
+        logger.info("Imported " + result.getOwners() + " owners and " + result.getPets() + " pets ("
+                + result.getRowsPerSecond() + " rows/s), rejected " + result.getRejected());
+        return ServerResponse.ok().body(result.toMap());
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.Validator;
+
+/**
+ * Imports owners and their pets read by an {@link OwnerExportFormat.OwnerReader}.
+ * Each owner is validated with the bean validation constraints of {@link Owner}
+ * and each pet with the {@link PetValidator}; an owner is skipped, and the reason
+ * reported, if it or any of its pets is invalid. Valid owners are saved in chunks,
+ * one transaction per chunk, using JDBC batches.
+ */
+class OwnerImporter {
+
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final OwnerRepository owners;
+
+    private final PetRepository pets;
+
+    private final NamedEntityIndex<PetType> petTypes;
+
+    private final Validator ownerValidator;
+
+    private final Validator petValidator = new PetValidator();
+
+    private final TransactionOperations transactions;
+
+    private final int batchSize;
+
+    private final int chunkSize;
+
+    /**
+     * @param batchSize the maximum number of statements per JDBC batch
+     * @param chunkSize the maximum number of owners saved per transaction
+     */
+    OwnerImporter(OwnerRepository owners, PetRepository pets, NamedEntityIndex<PetType> petTypes,
+            Validator ownerValidator, TransactionOperations transactions, int batchSize, int chunkSize) {
+        this.owners = owners;
+        this.pets = pets;
+        this.petTypes = petTypes;
+        this.ownerValidator = ownerValidator;
+        this.transactions = transactions;
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+    }
+
+    Result importOwners(OwnerExportFormat.OwnerReader reader) throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        List<Owner> chunk = new ArrayList<>(this.chunkSize);
+        int record = 0;
+        for (Owner owner = reader.read(); owner != null; owner = reader.read()) {
+            record++;
+            if (validate(owner, record, result)) {
+                chunk.add(owner);
+                if (chunk.size() == this.chunkSize) {
+                    save(chunk, result);
+                }
+            }
+        }
+        save(chunk, result);
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private boolean validate(Owner owner, int record, Result result) {
+        List<FieldError> errors = new ArrayList<>();
+        Errors ownerErrors = new BeanPropertyBindingResult(owner, "owner");
+        this.ownerValidator.validate(owner, ownerErrors);
+        errors.addAll(ownerErrors.getFieldErrors());
+        for (Pet pet : owner.getPetsInternal()) {
+            if (pet.getType() != null) {
+                pet.setType(this.petTypes.findByName(pet.getType().getName()));
+            }
+            Errors petErrors = new BeanPropertyBindingResult(pet, "pet");
+            this.petValidator.validate(pet, petErrors);
+            if (pet.getName() != null && owner.getPet(pet.getName()) != pet) {
+                petErrors.rejectValue("name", "duplicate", "already exists");
+            }
+            errors.addAll(petErrors.getFieldErrors());
+        }
+        if (errors.isEmpty()) {
+            return true;
+        }
+        result.rejected++;
+        if (result.errors.size() < MAX_REPORTED_ERRORS) {
+            StringBuilder message = new StringBuilder("record ").append(record).append(':');
+            for (FieldError error : errors) {
+                message.append(' ').append(error.getObjectName()).append('.').append(error.getField())
+                        .append(' ').append(error.getDefaultMessage()).append(';');
+            }
+            result.errors.add(message.substring(0, message.length() - 1));
+        }
+        return false;
+    }
+
+    private void save(List<Owner> chunk, Result result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Pet> pets = new ArrayList<>();
+        for (Owner owner : chunk) {
+            pets.addAll(owner.getPetsInternal());
+        }
+        this.transactions.executeWithoutResult(status -> {
+            this.owners.saveAll(chunk, this.batchSize);
+            this.pets.saveAll(pets, this.batchSize);
+        });
+        result.owners += chunk.size();
+        result.pets += pets.size();
+        chunk.clear();
+    }
+
+    /**
+     * Counts of what was imported and rejected, with the import throughput.
+     */
+    static class Result {
+
+        private int owners;
+
+        private int pets;
+
+        private int rejected;
+
+        private long nanos;
+
+        private final List<String> errors = new ArrayList<>();
+
+        int getOwners() {
+            return this.owners;
+        }
+
+        int getPets() {
+            return this.pets;
+        }
+
+        int getRejected() {
+            return this.rejected;
+        }
+
+        List<String> getErrors() {
+            return this.errors;
+        }
+
+        /**
+         * Return the number of owner and pet rows inserted per second.
+         */
+        long getRowsPerSecond() {
+            return this.nanos == 0 ? 0 : (this.owners + this.pets) * 1_000_000_000L / this.nanos;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("owners", this.owners);
+            map.put("pets", this.pets);
+            map.put("rejected", this.rejected);
+            map.put("millis", this.nanos / 1_000_000);
+            map.put("rowsPerSecond", getRowsPerSecond());
+            map.put("errors", this.errors);
+            return map;
+        }
+
+    }
+
+}
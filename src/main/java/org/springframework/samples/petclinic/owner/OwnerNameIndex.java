@@ -0,0 +1,425 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index of owner last names answering prefix queries without touching
+ * the database.
+ * <p>
+ * The bulk of the index is a set of parallel arrays: the distinct case-folded last
+ * names in sorted order and, for each of them, a run of owner ids in one shared
+ * <code>int[]</code>. That costs four bytes per owner plus one entry per distinct
+ * name, so millions of owners fit comfortably. Names written after the arrays were
+ * built are kept in a small sorted overlay that shadows the stale array entries
+ * and is folded back into the arrays once it grows past a fraction of their size.
+ * <p>
+ * Matching is case-insensitive. Callers should check the owners they load against
+ * the prefix, since the index may hold names the caller's transaction cannot see.
+ * The index only hears of this node's writes, so names written by other nodes
+ * sharing the database appear when it is next rebuilt; a rebuild keeps the writes
+ * made while it was reading the table.
+ */
+final class OwnerNameIndex {
+
+    private static final int MIN_OVERLAY_THRESHOLD = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Sorted, distinct, case-folded last names. */
+    private String[] keys = new String[0];
+
+    /** Last names as first seen, parallel to {@link #keys}. */
+    private String[] names = new String[0];
+
+    /** Start of the ids for <code>keys[i]</code> in {@link #ids}, plus an end marker. */
+    private int[] offsets = new int[] { 0 };
+
+    private int[] ids = new int[0];
+
+    /** Ids whose entry in the arrays is stale (renamed or removed). */
+    private final Set<Integer> shadowed = new HashSet<>();
+
+    /** Current entries for shadowed or newly added ids. */
+    private final TreeMap<String, TreeSet<Integer>> overlay = new TreeMap<>();
+
+    private final Map<Integer, String> overlayKeys = new HashMap<>();
+
+    private final Map<String, String> overlayNames = new HashMap<>();
+
+    /** Ids written since the running rebuild started reading, if any. */
+    private Set<Integer> writtenDuringRebuild;
+
+    /**
+     * Replace the whole index with the given owners.
+     *
+     * @param lastNamesById the last name of every owner, keyed by id
+     */
+    void rebuild(Map<Integer, String> lastNamesById) {
+        rebuild(() -> lastNamesById);
+    }
+
+    /**
+     * Replace the whole index with the owners read by the given loader, keeping
+     * the writes made while it runs, since it may have read the table before them.
+     * Rebuilds must not overlap.
+     *
+     * @param loader returns the last name of every owner, keyed by id
+     */
+    void rebuild(Supplier<Map<Integer, String>> loader) {
+        this.lock.writeLock().lock();
+        try {
+            this.writtenDuringRebuild = new HashSet<>();
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+        try {
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            for (Map.Entry<Integer, String> owner : loader.get().entrySet()) {
+                String name = owner.getValue();
+                entries.computeIfAbsent(normalize(name), key -> new Entry(name)).add(owner.getKey());
+            }
+            this.lock.writeLock().lock();
+            try {
+                load(entries);
+                for (Integer id : new ArrayList<>(this.overlayKeys.keySet())) {
+                    if (!this.writtenDuringRebuild.contains(id)) {
+                        unlink(id);
+                    }
+                }
+                this.shadowed.retainAll(this.writtenDuringRebuild);
+            }
+            finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+        finally {
+            this.lock.writeLock().lock();
+            try {
+                this.writtenDuringRebuild = null;
+            }
+            finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Add an owner or record its new last name.
+     */
+    void put(int id, String lastName) {
+        String key = normalize(lastName);
+        this.lock.writeLock().lock();
+        try {
+            shadow(id);
+            this.overlay.computeIfAbsent(key, k -> new TreeSet<>()).add(id);
+            this.overlayKeys.put(id, key);
+            this.overlayNames.putIfAbsent(key, lastName);
+            compactIfNeeded();
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forget an owner, for example because its insert was rolled back.
+     */
+    void remove(int id) {
+        this.lock.writeLock().lock();
+        try {
+            shadow(id);
+            compactIfNeeded();
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the ids of all owners whose last name starts with the given prefix,
+     * ordered by case-folded last name and then by id.
+     */
+    int[] findIds(String prefix) {
+        String key = normalize(prefix);
+        this.lock.readLock().lock();
+        try {
+            Entry found = new Entry(null);
+            int i = lowerBound(key);
+            Iterator<Map.Entry<String, TreeSet<Integer>>> overlayEntries = prefixOf(this.overlay, key).entrySet()
+                    .iterator();
+            Map.Entry<String, TreeSet<Integer>> nextOverlay = overlayEntries.hasNext() ? overlayEntries.next() : null;
+            while (true) {
+                String nextKey = i < this.keys.length && this.keys[i].startsWith(key) ? this.keys[i] : null;
+                if (nextKey == null && nextOverlay == null) {
+                    break;
+                }
+                int order = nextOverlay == null ? -1 : nextKey == null ? 1 : nextKey.compareTo(nextOverlay.getKey());
+                int j = order <= 0 ? this.offsets[i] : 0;
+                int end = order <= 0 ? this.offsets[i + 1] : 0;
+                Iterator<Integer> overlayIds = order >= 0 ? nextOverlay.getValue().iterator()
+                        : Collections.<Integer>emptyIterator();
+                Integer overlayId = overlayIds.hasNext() ? overlayIds.next() : null;
+                // both runs are sorted by id, so merge them
+                while (j < end || overlayId != null) {
+                    if (overlayId == null || (j < end && this.ids[j] < overlayId)) {
+                        if (this.shadowed.isEmpty() || !this.shadowed.contains(this.ids[j])) {
+                            found.add(this.ids[j]);
+                        }
+                        j++;
+                    }
+                    else {
+                        found.add(overlayId);
+                        overlayId = overlayIds.hasNext() ? overlayIds.next() : null;
+                    }
+                }
+                if (order <= 0) {
+                    i++;
+                }
+                if (order >= 0) {
+                    nextOverlay = overlayEntries.hasNext() ? overlayEntries.next() : null;
+                }
+            }
+            return Arrays.copyOf(found.ids, found.count);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return up to <code>limit</code> distinct last names starting with the given
+     * prefix, in alphabetical order.
+     */
+    List<String> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        List<String> suggestions = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            int i = lowerBound(key);
+            Iterator<String> overlayKeys = prefixOf(this.overlay, key).keySet().iterator();
+            String nextOverlay = overlayKeys.hasNext() ? overlayKeys.next() : null;
+            while (suggestions.size() < limit) {
+                String nextKey = i < this.keys.length && this.keys[i].startsWith(key) ? this.keys[i] : null;
+                if (nextKey == null && nextOverlay == null) {
+                    break;
+                }
+                if (nextOverlay == null || (nextKey != null && nextKey.compareTo(nextOverlay) < 0)) {
+                    if (hasVisibleIds(i)) {
+                        suggestions.add(this.names[i]);
+                    }
+                    i++;
+                }
+                else {
+                    boolean inArrays = nextOverlay.equals(nextKey);
+                    suggestions.add(inArrays ? this.names[i] : this.overlayNames.get(nextOverlay));
+                    if (inArrays) {
+                        i++;
+                    }
+                    nextOverlay = overlayKeys.hasNext() ? overlayKeys.next() : null;
+                }
+            }
+            return suggestions;
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of owners in the index.
+     */
+    int size() {
+        this.lock.readLock().lock();
+        try {
+            int visible = 0;
+            for (int id : this.ids) {
+                if (!this.shadowed.contains(id)) {
+                    visible++;
+                }
+            }
+            return visible + this.overlayKeys.size();
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of ids whose entry in the arrays is stale, which is bounded
+     * by compaction.
+     */
+    int getShadowedCount() {
+        this.lock.readLock().lock();
+        try {
+            return this.shadowed.size();
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private boolean hasVisibleIds(int i) {
+        for (int j = this.offsets[i]; j < this.offsets[i + 1]; j++) {
+            if (!this.shadowed.contains(this.ids[j])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hide the entry of the given id in the arrays and drop it from the overlay.
+     * Must hold the write lock.
+     */
+    private void shadow(int id) {
+        unlink(id);
+        this.shadowed.add(id);
+        if (this.writtenDuringRebuild != null) {
+            this.writtenDuringRebuild.add(id);
+        }
+    }
+
+    /**
+     * Compact once the shadowed ids, which include every overlay id, pass a
+     * fraction of the arrays, unless a rebuild is about to replace them anyway.
+     * Must hold the write lock.
+     */
+    private void compactIfNeeded() {
+        if (this.writtenDuringRebuild == null
+                && this.shadowed.size() > Math.max(MIN_OVERLAY_THRESHOLD, this.ids.length / 16)) {
+            compact();
+        }
+    }
+
+    private void unlink(int id) {
+        String previous = this.overlayKeys.remove(id);
+        if (previous != null) {
+            TreeSet<Integer> previousIds = this.overlay.get(previous);
+            previousIds.remove(id);
+            if (previousIds.isEmpty()) {
+                this.overlay.remove(previous);
+                this.overlayNames.remove(previous);
+            }
+        }
+    }
+
+    /**
+     * Fold the overlay back into the arrays. Must hold the write lock.
+     */
+    private void compact() {
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        for (int i = 0; i < this.keys.length; i++) {
+            String name = this.names[i];
+            for (int j = this.offsets[i]; j < this.offsets[i + 1]; j++) {
+                if (!this.shadowed.contains(this.ids[j])) {
+                    entries.computeIfAbsent(this.keys[i], key -> new Entry(name)).add(this.ids[j]);
+                }
+            }
+        }
+        for (Map.Entry<String, TreeSet<Integer>> overlayEntry : this.overlay.entrySet()) {
+            String key = overlayEntry.getKey();
+            Entry entry = entries.computeIfAbsent(key, k -> new Entry(this.overlayNames.get(k)));
+            for (Integer id : overlayEntry.getValue()) {
+                entry.add(id);
+            }
+        }
+        load(entries);
+        this.shadowed.clear();
+        this.overlay.clear();
+        this.overlayKeys.clear();
+        this.overlayNames.clear();
+    }
+
+    private void load(TreeMap<String, Entry> entries) {
+        int total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.count;
+        }
+        String[] keys = new String[entries.size()];
+        String[] names = new String[entries.size()];
+        int[] offsets = new int[entries.size() + 1];
+        int[] ids = new int[total];
+        int i = 0;
+        int position = 0;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            keys[i] = entry.getKey();
+            names[i] = value.name;
+            offsets[i] = position;
+            Arrays.sort(value.ids, 0, value.count);
+            System.arraycopy(value.ids, 0, ids, position, value.count);
+            position += value.count;
+            i++;
+        }
+        offsets[i] = position;
+        this.keys = keys;
+        this.names = names;
+        this.offsets = offsets;
+        this.ids = ids;
+    }
+
+    private int lowerBound(String key) {
+        int index = Arrays.binarySearch(this.keys, key);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    private static <V> Map<String, V> prefixOf(TreeMap<String, V> map, String prefix) {
+        return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    static String normalize(String lastName) {
+        return lastName == null ? "" : lastName.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+
+        private final String name;
+
+        private int[] ids = new int[1];
+
+        private int count;
+
+        private Entry(String name) {
+            this.name = name;
+        }
+
+        private void add(int id) {
+            if (this.count == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.count * 2);
+            }
+            this.ids[this.count++] = id;
+        }
+
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of an owner search, ordered by last name and id. Pages are addressed
+ * with a {@link Cursor} (the last name and id of the last owner on the previous
+ * page) rather than an offset, so fetching a page costs the same no matter how
+ * deep into the results it is.
+ */
+public class OwnerPage {
+
+    private final List<Owner> content;
+
+    private final int size;
+
+    private final Cursor next;
+
+    private final Long total;
+
+    public OwnerPage(List<Owner> content, int size, Cursor next, Long total) {
+        this.content = Collections.unmodifiableList(content);
+        this.size = size;
+        this.next = next;
+        this.total = total;
+    }
+
+    public List<Owner> getContent() {
+        return this.content;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.content.isEmpty();
+    }
+
+    public boolean hasNext() {
+        return this.next != null;
+    }
+
+    /**
+     * Return the cursor addressing the page after this one, or <code>null</code> if
+     * this is the last page.
+     */
+    public Cursor getNext() {
+        return this.next;
+    }
+
+    /**
+     * Return the total number of matching owners, or <code>null</code> if it was not
+     * requested.
+     */
+    public Long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Position in the <code>(last_name, id)</code> ordering after which a page starts.
+     */
+    public static class Cursor {
+
+        private final String lastName;
+
+        private final int id;
+
+        public Cursor(String lastName, int id) {
+            this.lastName = lastName;
+            this.id = id;
+        }
+
+        public String getLastName() {
+            return this.lastName;
+        }
+
+        public int getId() {
+            return this.id;
+        }
+
+    }
+
+}
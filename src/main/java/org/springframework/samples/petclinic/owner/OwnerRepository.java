@@ -16,6 +16,8 @@
 package org.springframework.samples.petclinic.owner;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.samples.petclinic.model.BaseEntity;
@@ -43,6 +45,48 @@ public interface OwnerRepository {
      */
     Collection<Owner> findByLastName(String lastName) throws DataAccessException;
 
+    /**
+     * Retrieve one page of <code>Owner</code>s whose last name <i>starts</i> with the
+     * given name, ordered by last name and id.
+     *
+     * @param lastName Value to search for
+     * @param after the cursor returned with the previous page, or <code>null</code> for
+     * the first page
+     * @param size the maximum number of owners on the page
+     * @param countTotal whether to also count all matching owners
+     * @return the page of matching <code>Owner</code>s (empty if none found)
+     */
+    default OwnerPage findByLastName(String lastName, OwnerPage.Cursor after, int size,
+            boolean countTotal) throws DataAccessException {
+        return findByLastName(lastName, after, size, countTotal, OwnerFetchPlan.PETS_AND_VISITS);
+    }
+
+    /**
+     * Retrieve one page of <code>Owner</code>s whose last name <i>starts</i> with the
+     * given name, ordered by last name and id, reading as much of each owner as the
+     * fetch plan asks for.
+     *
+     * @param lastName Value to search for
+     * @param after the cursor returned with the previous page, or <code>null</code> for
+     * the first page
+     * @param size the maximum number of owners on the page
+     * @param countTotal whether to also count all matching owners
+     * @param fetchPlan whether to read the visits of the owners' pets up front
+     * @return the page of matching <code>Owner</code>s (empty if none found)
+     */
+    OwnerPage findByLastName(String lastName, OwnerPage.Cursor after, int size,
+            boolean countTotal, OwnerFetchPlan fetchPlan) throws DataAccessException;
+
+    /**
+     * Retrieve the distinct last names that <i>start</i> with the given prefix,
+     * ignoring case, for type-ahead suggestions.
+     *
+     * @param prefix Value to search for
+     * @param limit the maximum number of names to return
+     * @return the matching last names in alphabetical order
+     */
+    List<String> findLastNamesStartingWith(String prefix, int limit) throws DataAccessException;
+
     /**
      * Retrieve an <code>Owner</code> from the data store by id.
      *
@@ -52,6 +96,15 @@ public interface OwnerRepository {
      */
     Owner findById(int id) throws DataAccessException;
 
+    /**
+     * Read every <code>Owner</code>, with its pets and visits, in id order and hand
+     * them to the given action one at a time without keeping them in memory.
+     *
+     * @param fetchSize the number of rows the driver should fetch per round-trip
+     * @param action called once per owner
+     */
+    void exportAll(int fetchSize, Consumer<Owner> action) throws DataAccessException;
+
     /**
      * Save an <code>Owner</code> to the data store, either inserting or updating it.
      *
@@ -60,4 +113,13 @@ public interface OwnerRepository {
      */
     void save(Owner owner) throws DataAccessException;
 
+    /**
+     * Save several <code>Owner</code>s, inserting new ones and updating the others
+     * with JDBC batches. Pets are not saved.
+     *
+     * @param owners the <code>Owner</code>s to save
+     * @param batchSize the maximum number of statements per JDBC batch
+     */
+    void saveAll(List<Owner> owners, int batchSize) throws DataAccessException;
+
 }
@@ -19,13 +19,9 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
 
-import org.springframework.beans.support.MutableSortDefinition;
-import org.springframework.beans.support.PropertyComparator;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.samples.petclinic.model.NamedEntity;
 import org.springframework.samples.petclinic.visit.Visit;
@@ -39,6 +35,9 @@ import org.springframework.samples.petclinic.visit.Visit;
  */
 public class Pet extends NamedEntity {
 
+    private static final Comparator<Visit> VISITS_BY_DATE_DESCENDING = Comparator.comparing(Visit::getDate,
+            Comparator.nullsFirst(Comparator.<LocalDate>reverseOrder()));
+
     @DateTimeFormat(pattern = "yyyy-MM-dd")
     private LocalDate birthDate;
 
@@ -46,12 +45,18 @@ public class Pet extends NamedEntity {
 
     private Owner owner;
 
-    private Set<Visit> visits = new LinkedHashSet<>();
+    /**
+     * The visits, newest first, kept in that order as they are added; visits with
+     * the same date stay in the order they were added.
+     */
+    private List<Visit> visits = new ArrayList<>();
 
     private int typeId;
 
     private int ownerId;
 
+    private VisitLoader visitLoader;
+
     public int getTypeId() {
         return this.typeId;
     }
@@ -68,6 +73,14 @@ public class Pet extends NamedEntity {
         this.ownerId = ownerId;
     }
 
+    @Override
+    public void setName(String name) {
+        if (this.owner != null) {
+            this.owner.renamePet(this, getName(), name);
+        }
+        super.setName(name);
+    }
+
     public void setBirthDate(LocalDate birthDate) {
         this.birthDate = birthDate;
     }
@@ -92,26 +105,63 @@ public class Pet extends NamedEntity {
         this.owner = owner;
     }
 
-    protected Set<Visit> getVisitsInternal() {
+    /**
+     * Defer reading the visits of this pet until they are first accessed.
+     */
+    void setVisitLoader(VisitLoader visitLoader) {
+        this.visitLoader = visitLoader;
+    }
+
+    protected List<Visit> getVisitsInternal() {
+        if (this.visitLoader != null) {
+            VisitLoader loader = this.visitLoader;
+            this.visitLoader = null;
+            loader.loadVisits(this);
+        }
         if (this.visits == null) {
-            this.visits = new HashSet<>();
+            this.visits = new ArrayList<>();
         }
         return this.visits;
     }
 
     protected void setVisitsInternal(Collection<Visit> visits) {
-        this.visits = new LinkedHashSet<>(visits);
+        this.visitLoader = null;
+        this.visits = new ArrayList<>(visits);
+        this.visits.sort(VISITS_BY_DATE_DESCENDING);
     }
 
+    /**
+     * Return the visits of this pet, newest first, ordered by the dates they had
+     * when they were added.
+     */
     public List<Visit> getVisits() {
-        List<Visit> sortedVisits = new ArrayList<>(getVisitsInternal());
-        PropertyComparator.sort(sortedVisits, new MutableSortDefinition("date", false, false));
-        return Collections.unmodifiableList(sortedVisits);
+        return Collections.unmodifiableList(getVisitsInternal());
     }
 
+    /**
+     * Add a visit in date order. Visits are read from the database newest first, so
+     * while loading each one is appended; any other visit is inserted where a
+     * binary search finds its place.
+     */
     public void addVisit(Visit visit) {
-        getVisitsInternal().add(visit);
+        List<Visit> visits = getVisitsInternal();
         visit.setPetId(this.getId());
+        if (visits.isEmpty() || VISITS_BY_DATE_DESCENDING.compare(visits.get(visits.size() - 1), visit) <= 0) {
+            visits.add(visit);
+            return;
+        }
+        int low = 0;
+        int high = visits.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (VISITS_BY_DATE_DESCENDING.compare(visits.get(mid), visit) <= 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        visits.add(low, visit);
     }
 
 }
@@ -22,6 +22,7 @@ import java.util.Map;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.format.support.FormattingConversionService;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.BindingResult;
@@ -97,11 +98,10 @@ class PetController {
                 && owner.getPet(pet.getName(), true) != null) {
             result.rejectValue("name", "duplicate", "already exists");
         }
-        if (result.hasErrors()) {
+        if (result.hasErrors() || !savePet(pet, result)) {
             return ServerResponse.ok().render(VIEWS_PETS_CREATE_OR_UPDATE_FORM, model);
         }
         else {
-            this.pets.save(pet);
             return ServerResponse.ok().render("redirect:/owners/{ownerId}", model);
         }
     }
@@ -118,15 +118,29 @@ class PetController {
         Map<String, Object> model = new HashMap<>();
         BindingResult result = bindPet(model, request);
         Pet pet = (Pet) model.get("pet");
-        if (result.hasErrors()) {
+        if (result.hasErrors() || !savePet(pet, result)) {
             return ServerResponse.ok().render(VIEWS_PETS_CREATE_OR_UPDATE_FORM, model);
         }
         else {
-            this.pets.save(pet);
             return ServerResponse.ok().render("redirect:/owners/{ownerId}", model);
         }
     }
 
+    /**
+     * Save the pet, reporting a name taken by a concurrent submission after the
+     * in-memory check as a duplicate, as the unique key on owner and name rejects it.
+     */
+    private boolean savePet(Pet pet, BindingResult result) {
+        try {
+            this.pets.save(pet);
+            return true;
+        }
+        catch (DuplicateKeyException ex) {
+            result.rejectValue("name", "duplicate", "already exists");
+            return false;
+        }
+    }
+
     private BindingResult bindPet(Map<String, Object> model, ServerRequest request) {
         Pet pet = new Pet();
         ServletRequestDataBinder binder = new ServletRequestDataBinder(pet, "pet");
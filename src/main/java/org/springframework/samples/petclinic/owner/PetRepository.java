@@ -49,6 +49,16 @@ public interface PetRepository {
      */
     Pet findById(int id) throws DataAccessException;
 
+    /**
+     * Check whether the <code>Pet</code> with the given id belongs to the given
+     * <code>Owner</code>, without loading either.
+     *
+     * @param id the pet id
+     * @param ownerId the owner id
+     * @return <code>true</code> if the pet exists and belongs to the owner
+     */
+    boolean existsByIdAndOwnerId(int id, int ownerId) throws DataAccessException;
+
     /**
      * Save a <code>Pet</code> to the data store, either inserting or updating it.
      *
@@ -57,4 +67,13 @@ public interface PetRepository {
      */
     void save(Pet pet) throws DataAccessException;
 
+    /**
+     * Save several <code>Pet</code>s, inserting new ones and updating the others
+     * with JDBC batches. Each pet's owner must already have been saved.
+     *
+     * @param pets the <code>Pet</code>s to save
+     * @param batchSize the maximum number of statements per JDBC batch
+     */
+    void saveAll(List<Pet> pets, int batchSize) throws DataAccessException;
+
 }
@@ -17,11 +17,11 @@ package org.springframework.samples.petclinic.owner;
 
 
 import java.text.ParseException;
-import java.util.Collection;
 import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.Formatter;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
 import org.springframework.stereotype.Component;
 
 /**
@@ -38,12 +38,12 @@ import org.springframework.stereotype.Component;
 @Component
 public class PetTypeFormatter implements Formatter<PetType> {
 
-    private final PetRepository pets;
+    private final ReferenceDataRegistry referenceData;
 
 
     @Autowired
-    public PetTypeFormatter(PetRepository pets) {
-        this.pets = pets;
+    public PetTypeFormatter(ReferenceDataRegistry referenceData) {
+        this.referenceData = referenceData;
     }
 
     @Override
@@ -53,13 +53,11 @@ public class PetTypeFormatter implements Formatter<PetType> {
 
     @Override
     public PetType parse(String text, Locale locale) throws ParseException {
-        Collection<PetType> findPetTypes = this.pets.findPetTypes();
-        for (PetType type : findPetTypes) {
-            if (type.getName().equals(text)) {
-                return type;
-            }
+        PetType type = this.referenceData.getPetTypes().findByName(text);
+        if (type == null) {
+            throw new ParseException("type not found: " + text, 0);
         }
-        throw new ParseException("type not found: " + text, 0);
+        return type;
     }
 
 }
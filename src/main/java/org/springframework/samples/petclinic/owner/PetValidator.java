@@ -32,6 +32,8 @@ public class PetValidator implements Validator {
 
     private static final String REQUIRED = "required";
 
+    private static final String SINGLE_LINE = "singleLine";
+
     @Override
     public void validate(Object obj, Errors errors) {
         Pet pet = (Pet) obj;
@@ -40,6 +42,10 @@ public class PetValidator implements Validator {
         if (!StringUtils.hasLength(name)) {
             errors.rejectValue("name", REQUIRED, REQUIRED);
         }
+        else if (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+            // the owner summaries separate pet names with line breaks
+            errors.rejectValue("name", SINGLE_LINE, "must be a single line");
+        }
 
         // type validation
         if (pet.isNew() && pet.getType() == null) {
@@ -21,6 +21,7 @@ import java.util.Map;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.samples.petclinic.visit.Visit;
 import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.validation.BindingResult;
@@ -67,7 +68,7 @@ class VisitController {
     }
 
     /**
-     * Called by every handler method. 2 goals: - Make sure we always have fresh data -
+     * Called when the form is shown. 2 goals: - Make sure we always have fresh data -
      * Since we do not use the session scope, make sure that Pet object always has an id
      * (Even though id is not part of the form fields)
      *
@@ -90,17 +91,30 @@ class VisitController {
         return ServerResponse.ok().render("pets/createOrUpdateVisitForm", model);
     }
 
+    /**
+     * Binds and validates the visit without loading the pet: a valid visit only
+     * needs an existence check on the pet and owner pair before it is inserted.
+     * The pet is loaded only to re-render the form when the visit is invalid.
+     */
     private ServerResponse processNewVisitForm(ServerRequest request) {
         Map<String, Object> model = new HashMap<>();
         Integer petId = Integer.valueOf(request.pathVariable("petId"));
+        Integer ownerId = Integer.valueOf(request.pathVariable("ownerId"));
         model.put("petId", petId);
-        Visit visit = loadPetWithVisit(petId, model);
+        model.put("ownerId", ownerId);
+        Visit visit = new Visit();
+        visit.setPetId(petId);
         BindingResult result = bindVisit(visit, model, request);
-        model.put("ownerId", Integer.valueOf(request.pathVariable("ownerId")));
         if (result.hasErrors()) {
+            Pet pet = this.pets.findById(petId);
+            model.put("pet", pet);
+            pet.addVisit(visit);
             return ServerResponse.ok().render("pets/createOrUpdateVisitForm", model);
         }
         else {
+            if (!this.pets.existsByIdAndOwnerId(petId, ownerId)) {
+                throw new DataRetrievalFailureException("Cannot find Pet " + petId + " of Owner " + ownerId);
+            }
             this.visits.save(visit);
             return ServerResponse.ok().render("redirect:/owners/{ownerId}", model);
         }
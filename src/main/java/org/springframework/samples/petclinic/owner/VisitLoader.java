@@ -0,0 +1,33 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+/**
+ * Reads the visits of a {@link Pet} that was loaded without them, the first time
+ * they are needed.
+ *
+ * @see OwnerFetchPlan#PETS
+ */
+@FunctionalInterface
+interface VisitLoader {
+
+    /**
+     * Add the stored visits to the given pet. Called at most once per pet, after
+     * its loader has been cleared.
+     */
+    void loadVisits(Pet pet);
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.system;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.samples.petclinic.owner.JdbcPetTypeRowMapper;
+import org.springframework.samples.petclinic.owner.PetType;
+import org.springframework.samples.petclinic.vet.JdbcSpecialtyRowMapper;
+import org.springframework.samples.petclinic.vet.Specialty;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory copy of the reference data tables (<code>types</code> and
+ * <code>specialties</code>). The tables are read once at startup and then served
+ * from immutable {@link NamedEntityIndex indexes}; call {@link #refresh()} after
+ * changing either table to publish a new snapshot.
+ */
+@Component
+public class ReferenceDataRegistry implements SmartInitializingSingleton {
+
+    private static final Log logger = LogFactory.getLog(ReferenceDataRegistry.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Snapshot snapshot;
+
+    public ReferenceDataRegistry(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            refresh();
+        }
+        catch (DataAccessException ex) {
+            // The schema may not be there yet: try again on first use
+            logger.warn("Could not load reference data at startup: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Reload both tables and atomically replace the current snapshot.
+     */
+    public void refresh() throws DataAccessException {
+        NamedEntityIndex<PetType> petTypes = NamedEntityIndex
+                .of(this.jdbcTemplate.query("SELECT id, name FROM types ORDER BY name",
+                        new JdbcPetTypeRowMapper()));
+        NamedEntityIndex<Specialty> specialties = NamedEntityIndex
+                .of(this.jdbcTemplate.query("SELECT id, name FROM specialties ORDER BY name",
+                        new JdbcSpecialtyRowMapper()));
+        this.snapshot = new Snapshot(petTypes, specialties);
+    }
+
+    public NamedEntityIndex<PetType> getPetTypes() throws DataAccessException {
+        return snapshot().petTypes;
+    }
+
+    public NamedEntityIndex<Specialty> getSpecialties() throws DataAccessException {
+        return snapshot().specialties;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                if (this.snapshot == null) {
+                    refresh();
+                }
+                snapshot = this.snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+
+        private final NamedEntityIndex<PetType> petTypes;
+
+        private final NamedEntityIndex<Specialty> specialties;
+
+        private Snapshot(NamedEntityIndex<PetType> petTypes,
+                NamedEntityIndex<Specialty> specialties) {
+            this.petTypes = petTypes;
+            this.specialties = specialties;
+        }
+
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vet;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Repository;
+
+/**
+ * {@link VetRepository} that keeps the result of {@link JdbcVetRepositoryImpl#findAll()}
+ * in memory. It is a plain decorator rather than a caching proxy, so it works the
+ * same with functional bean registration and in a native image.
+ * <p>
+ * The vets are reloaded in the background once they are older than
+ * <code>petclinic.vet-cache.refresh</code>, and requests keep getting the
+ * previous list until the reload completes. Only the first request, or one made
+ * after the list has gone unused for longer than
+ * <code>petclinic.vet-cache.ttl</code>, waits for the database, and requests
+ * arriving meanwhile wait for the same load rather than starting their own. A TTL of 0
+ * disables the cache. Hits, misses, puts and evictions are published like the
+ * statistics of a JCache cache named <code>vets</code>. Each load also builds
+ * the {@link VetSpecialtyIndex} that serves {@link #findBySpecialties}.
+ */
+@Repository
+@Primary
+public class CachingVetRepository implements VetRepository, MeterBinder, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(CachingVetRepository.class);
+
+    static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    static final Duration DEFAULT_REFRESH = Duration.ofMinutes(1);
+
+    private final VetRepository delegate;
+
+    private final long ttlNanos;
+
+    private final long refreshNanos;
+
+    private final Executor refreshExecutor;
+
+    private final LongSupplier clock;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Entry entry;
+
+    private CompletableFuture<Entry> loading;
+
+    private long hits;
+
+    private long misses;
+
+    private long puts;
+
+    private long evictions;
+
+    @Autowired
+    public CachingVetRepository(JdbcVetRepositoryImpl delegate, Environment environment) {
+        this(delegate, environment.getProperty("petclinic.vet-cache.ttl", Duration.class, DEFAULT_TTL),
+                environment.getProperty("petclinic.vet-cache.refresh", Duration.class, DEFAULT_REFRESH),
+                createExecutor(), System::nanoTime);
+    }
+
+    CachingVetRepository(VetRepository delegate, Duration ttl, Duration refresh, Executor refreshExecutor,
+            LongSupplier clock) {
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+        this.refreshNanos = Math.min(refresh.toNanos(), this.ttlNanos);
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    @Override
+    public Collection<Vet> findAll() throws DataAccessException {
+        if (this.ttlNanos <= 0) {
+            return this.delegate.findAll();
+        }
+        return current().index.getAll();
+    }
+
+    /**
+     * Filter the cached vets with a {@link VetSpecialtyIndex} built once per load.
+     */
+    @Override
+    public Collection<Vet> findBySpecialties(Collection<Specialty> specialties) throws DataAccessException {
+        if (this.ttlNanos <= 0) {
+            return this.delegate.findBySpecialties(specialties);
+        }
+        return current().index.findBySpecialties(specialties);
+    }
+
+    private Entry current() {
+        Entry entry = this.entry;
+        long now = this.clock.getAsLong();
+        if (entry != null && now - entry.loaded >= this.ttlNanos) {
+            evict(entry);
+            entry = null;
+        }
+        if (entry == null) {
+            recordMiss();
+            return loadOnce();
+        }
+        recordHit();
+        if (now - entry.loaded >= this.refreshNanos) {
+            refreshAhead();
+        }
+        return entry;
+    }
+
+    /**
+     * Discard the cached vets, so that the next request reloads them.
+     */
+    public synchronized void clear() {
+        if (this.entry != null) {
+            this.entry = null;
+            this.evictions++;
+        }
+    }
+
+    private void refreshAhead() {
+        if (!this.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    load();
+                }
+                catch (RuntimeException ex) {
+                    logger.warn("Could not refresh vets, keeping the cached ones", ex);
+                }
+                finally {
+                    this.refreshing.set(false);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex) {
+            this.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Load the vets, or wait for the load another request has already started.
+     */
+    private Entry loadOnce() {
+        CompletableFuture<Entry> loading;
+        boolean loader;
+        synchronized (this) {
+            if (this.entry != null) {
+                // loaded since this request missed
+                return this.entry;
+            }
+            loader = this.loading == null;
+            if (loader) {
+                this.loading = new CompletableFuture<>();
+            }
+            loading = this.loading;
+        }
+        if (!loader) {
+            try {
+                return loading.join();
+            }
+            catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        try {
+            Entry entry = load();
+            loading.complete(entry);
+            return entry;
+        }
+        catch (RuntimeException | Error ex) {
+            loading.completeExceptionally(ex);
+            throw ex;
+        }
+        finally {
+            synchronized (this) {
+                this.loading = null;
+            }
+        }
+    }
+
+    private Entry load() {
+        Entry entry = new Entry(VetSpecialtyIndex.of(this.delegate.findAll()), this.clock.getAsLong());
+        synchronized (this) {
+            this.entry = entry;
+            this.puts++;
+        }
+        return entry;
+    }
+
+    private synchronized void evict(Entry expired) {
+        if (this.entry == expired) {
+            this.entry = null;
+            this.evictions++;
+        }
+    }
+
+    private synchronized void recordHit() {
+        this.hits++;
+    }
+
+    private synchronized void recordMiss() {
+        this.misses++;
+    }
+
+    public synchronized int size() {
+        return this.entry != null ? 1 : 0;
+    }
+
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    public synchronized long getPutCount() {
+        return this.puts;
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("cache", "vets");
+        FunctionCounter.builder("cache.gets", this, CachingVetRepository::getHitCount)
+                .tags(tags).tag("result", "hit").description("The number of times cache lookup methods have returned a cached value.")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", this, CachingVetRepository::getMissCount)
+                .tags(tags).tag("result", "miss").description("The number of times cache lookup methods have returned an uncached (newly loaded) value.")
+                .register(registry);
+        FunctionCounter.builder("cache.puts", this, CachingVetRepository::getPutCount)
+                .tags(tags).description("The number of entries added to the cache.")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", this, CachingVetRepository::getEvictionCount)
+                .tags(tags).description("The number of times the cache was evicted.")
+                .register(registry);
+        Gauge.builder("cache.size", this, CachingVetRepository::size)
+                .tags(tags).description("The number of entries in this cache.")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        if (this.refreshExecutor instanceof ExecutorService) {
+            ((ExecutorService) this.refreshExecutor).shutdown();
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("vet-cache-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Entry {
+
+        private final VetSpecialtyIndex index;
+
+        private final long loaded;
+
+        private Entry(VetSpecialtyIndex index, long loaded) {
+            this.index = index;
+            this.loaded = loaded;
+        }
+
+    }
+
+}
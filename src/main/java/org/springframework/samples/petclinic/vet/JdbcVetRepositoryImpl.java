@@ -15,17 +15,12 @@
  */
 package org.springframework.samples.petclinic.vet;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.samples.petclinic.model.EntityUtils;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -44,39 +39,26 @@ public class JdbcVetRepositoryImpl implements VetRepository {
 
     private JdbcTemplate jdbcTemplate;
 
+    private ReferenceDataRegistry referenceData;
+
     @Autowired
-    public JdbcVetRepositoryImpl(JdbcTemplate jdbcTemplate) {
+    public JdbcVetRepositoryImpl(JdbcTemplate jdbcTemplate, ReferenceDataRegistry referenceData) {
         this.jdbcTemplate = jdbcTemplate;
+        this.referenceData = referenceData;
     }
 
     /**
-     * Refresh the cache of Vets that the ClinicService is holding.
+     * Refresh the cache of Vets that the ClinicService is holding. The vets and
+     * their specialty ids are read with a single join ordered by name, and by id
+     * to keep the rows of each vet together; all possible specialties are held by
+     * the reference data registry.
      */
     @Override
     public Collection<Vet> findAll() throws DataAccessException {
-        List<Vet> vets = new ArrayList<>();
-        // Retrieve the list of all vets.
-        vets.addAll(this.jdbcTemplate.query("SELECT id, first_name, last_name FROM vets ORDER BY last_name,first_name",
-                BeanPropertyRowMapper.newInstance(Vet.class)));
-
-        // Retrieve the list of all possible specialties.
-        final List<Specialty> specialties = this.jdbcTemplate.query("SELECT id, name FROM specialties",
-                BeanPropertyRowMapper.newInstance(Specialty.class));
-
-        // Build each vet's list of specialties.
-        for (Vet vet : vets) {
-            final List<Integer> vetSpecialtiesIds = this.jdbcTemplate.query(
-                    "SELECT specialty_id FROM vet_specialties WHERE vet_id=?", new BeanPropertyRowMapper<Integer>() {
-                        @Override
-                        public Integer mapRow(ResultSet rs, int row) throws SQLException {
-                            return rs.getInt(1);
-                        }
-                    }, vet.getId());
-            for (int specialtyId : vetSpecialtiesIds) {
-                Specialty specialty = EntityUtils.getById(specialties, Specialty.class, specialtyId);
-                vet.addSpecialty(specialty);
-            }
-        }
-        return vets;
+        return this.jdbcTemplate.query(
+                "SELECT vets.id, vets.first_name, vets.last_name, vet_specialties.specialty_id "
+                        + "FROM vets LEFT OUTER JOIN vet_specialties ON vets.id = vet_specialties.vet_id "
+                        + "ORDER BY vets.last_name, vets.first_name, vets.id",
+                new JdbcVetSpecialtyExtractor(this.referenceData.getSpecialties()));
     }
 }
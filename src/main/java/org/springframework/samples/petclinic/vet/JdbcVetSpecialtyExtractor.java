@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vet;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.samples.petclinic.model.ColumnIndexRowMapper;
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.samples.petclinic.model.NestedResultSetExtractor;
+
+/**
+ * {@link ResultSetExtractor} implementation by using the
+ * {@link NestedResultSetExtractor} for the rows of <code>vets</code> left joined
+ * with <code>vet_specialties</code>, with the rows of each vet together. The
+ * specialties themselves are taken from the given index rather than joined.
+ */
+public class JdbcVetSpecialtyExtractor extends NestedResultSetExtractor<Vet> {
+
+    public JdbcVetSpecialtyExtractor(final NamedEntityIndex<Specialty> specialties) {
+        super(NestedResultSetExtractor.root("id", new JdbcVetRowMapper()).nest("specialty_id",
+                new ColumnIndexRowMapper<Specialty>("specialty_id") {
+                    @Override
+                    protected Specialty mapRow(ResultSet rs, int[] columns) throws SQLException {
+                        return specialties.getById(rs.getInt(columns[0]));
+                    }
+                }, Vet::addSpecialty));
+    }
+
+}
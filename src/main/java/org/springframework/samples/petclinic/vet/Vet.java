@@ -17,12 +17,11 @@ package org.springframework.samples.petclinic.vet;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.springframework.beans.support.MutableSortDefinition;
-import org.springframework.beans.support.PropertyComparator;
 import org.springframework.samples.petclinic.model.Person;
 
 /**
@@ -35,8 +34,18 @@ import org.springframework.samples.petclinic.model.Person;
  */
 public class Vet extends Person {
 
+    private static final Comparator<Specialty> SPECIALTIES_BY_NAME = Comparator.comparing(Specialty::getName,
+            Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+
     private Set<Specialty> specialties;
 
+    /**
+     * The specialties sorted by name as returned by {@link #getSpecialties()}, or
+     * <code>null</code> once one has been added. Specialties are shared reference
+     * data and are not renamed once assigned to a vet.
+     */
+    private transient volatile List<Specialty> sortedSpecialties;
+
     protected Set<Specialty> getSpecialtiesInternal() {
         if (this.specialties == null) {
             this.specialties = new HashSet<>();
@@ -46,12 +55,18 @@ public class Vet extends Person {
 
     protected void setSpecialtiesInternal(Set<Specialty> specialties) {
         this.specialties = specialties;
+        this.sortedSpecialties = null;
     }
 
     public List<Specialty> getSpecialties() {
-        List<Specialty> sortedSpecs = new ArrayList<>(getSpecialtiesInternal());
-        PropertyComparator.sort(sortedSpecs, new MutableSortDefinition("name", true, true));
-        return Collections.unmodifiableList(sortedSpecs);
+        List<Specialty> sorted = this.sortedSpecialties;
+        if (sorted == null) {
+            List<Specialty> specialties = new ArrayList<>(getSpecialtiesInternal());
+            specialties.sort(SPECIALTIES_BY_NAME);
+            sorted = Collections.unmodifiableList(specialties);
+            this.sortedSpecialties = sorted;
+        }
+        return sorted;
     }
 
     public int getNrOfSpecialties() {
@@ -59,7 +74,9 @@ public class Vet extends Person {
     }
 
     public void addSpecialty(Specialty specialty) {
-        getSpecialtiesInternal().add(specialty);
+        if (getSpecialtiesInternal().add(specialty)) {
+            this.sortedSpecialties = null;
+        }
     }
 
 }
@@ -15,10 +15,23 @@
  */
 package org.springframework.samples.petclinic.vet;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.servlet.function.RouterFunction;
 import org.springframework.web.servlet.function.RouterFunctions;
 import org.springframework.web.servlet.function.ServerRequest;
@@ -35,8 +48,17 @@ class VetController {
 
     private final VetRepository vets;
 
-    public VetController(VetRepository clinicService) {
+    private final ReferenceDataRegistry referenceData;
+
+    private final ObjectMapper objectMapper;
+
+    private volatile SerializedVets serializedVets;
+
+    public VetController(VetRepository clinicService, ReferenceDataRegistry referenceData,
+            ObjectProvider<ObjectMapper> objectMapper) {
         this.vets = clinicService;
+        this.referenceData = referenceData;
+        this.objectMapper = objectMapper.getIfAvailable(ObjectMapper::new);
     }
 
     @Bean
@@ -50,17 +72,98 @@ class VetController {
         // Here we are returning an object of type 'Vets' rather than a collection of Vet
         // objects so it is simpler for Object-Xml mapping
         Vets vets = new Vets();
-        vets.getVetList().addAll(this.vets.findAll());
+        List<Specialty> specialties = findSpecialties(request);
+        if (specialties != null) {
+            vets.getVetList().addAll(
+                    specialties.isEmpty() ? this.vets.findAll() : this.vets.findBySpecialties(specialties));
+        }
         model.put("vets", vets);
         return ServerResponse.ok().render("vets/vetList", model);
     }
 
+    /**
+     * Serves the JSON body of the vets from memory, with a strong ETag so that
+     * clients polling with <code>If-None-Match</code> get a 304. The body is only
+     * serialized again when the repository returns a different collection, which
+     * the caching repository does only after reloading the vets. Lists filtered by
+     * <code>specialty</code> are serialized on every request.
+     */
     private ServerResponse vetsBody(ServerRequest request) {
-        // Here we are returning an object of type 'Vets' rather than a collection of Vet
+        SerializedVets vets;
+        List<Specialty> specialties = findSpecialties(request);
+        if (specialties == null) {
+            vets = serialize(Collections.emptyList());
+        }
+        else if (specialties.isEmpty()) {
+            vets = serializedVets();
+        }
+        else {
+            vets = serialize(this.vets.findBySpecialties(specialties));
+        }
+        return request.checkNotModified(vets.etag).orElseGet(() -> ServerResponse.ok().eTag(vets.etag)
+                .contentType(MediaType.APPLICATION_JSON).body(vets.body));
+    }
+
+    /**
+     * Resolve the comma-separated specialty names of the <code>specialty</code>
+     * parameters, which may also be repeated.
+     *
+     * @return the named specialties, empty for no filter, or <code>null</code> if
+     * a name is not a known specialty, so that no vet can match
+     */
+    private List<Specialty> findSpecialties(ServerRequest request) {
+        List<Specialty> specialties = new ArrayList<>();
+        for (String names : request.params().getOrDefault("specialty", Collections.emptyList())) {
+            for (String name : StringUtils.commaDelimitedListToStringArray(names)) {
+                if (StringUtils.hasText(name)) {
+                    Specialty specialty = this.referenceData.getSpecialties().findByName(name.trim());
+                    if (specialty == null) {
+                        return null;
+                    }
+                    specialties.add(specialty);
+                }
+            }
+        }
+        return specialties;
+    }
+
+    private SerializedVets serializedVets() {
+        Collection<Vet> found = this.vets.findAll();
+        SerializedVets serialized = this.serializedVets;
+        if (serialized == null || serialized.source != found) {
+            serialized = serialize(found);
+            this.serializedVets = serialized;
+        }
+        return serialized;
+    }
+
+    private SerializedVets serialize(Collection<Vet> found) {
+        // Here we are serializing an object of type 'Vets' rather than a collection of Vet
         // objects so it is simpler for JSon/Object mapping
         Vets vets = new Vets();
-        vets.getVetList().addAll(this.vets.findAll());
-        return ServerResponse.ok().body(vets);
+        vets.getVetList().addAll(found);
+        try {
+            return new SerializedVets(found, this.objectMapper.writeValueAsBytes(vets));
+        }
+        catch (JsonProcessingException ex) {
+            throw new HttpMessageNotWritableException("Could not write vets: " + ex.getOriginalMessage(), ex);
+        }
+    }
+
+    private static final class SerializedVets {
+
+        private final Collection<Vet> source;
+
+        private final byte[] body;
+
+        private final String etag;
+
+        private SerializedVets(Collection<Vet> source, byte[] body) {
+            this.source = source;
+            this.body = body;
+            this.etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        }
+
     }
 
 }
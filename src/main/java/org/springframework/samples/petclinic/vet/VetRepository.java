@@ -39,4 +39,16 @@ public interface VetRepository {
      */
     Collection<Vet> findAll() throws DataAccessException;
 
+    /**
+     * Retrieve the <code>Vet</code>s that have all of the given specialties, in the
+     * same order as {@link #findAll()}.
+     *
+     * @param specialties the specialties to match, or an empty collection for all vets
+     * @return a <code>Collection</code> of matching <code>Vet</code>s (or an empty
+     * <code>Collection</code> if none found)
+     */
+    default Collection<Vet> findBySpecialties(Collection<Specialty> specialties) throws DataAccessException {
+        return VetSpecialtyIndex.of(findAll()).findBySpecialties(specialties);
+    }
+
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of a list of {@link Vet vets} with, for each specialty id, a
+ * bitset of the positions of the vets that have it. Finding the vets with a set
+ * of specialties is then a bitwise AND of those bitsets.
+ */
+public final class VetSpecialtyIndex {
+
+    private final List<Vet> vets;
+
+    private final Map<Integer, BitSet> vetsBySpecialtyId;
+
+    private VetSpecialtyIndex(Collection<Vet> vets) {
+        this.vets = Collections.unmodifiableList(new ArrayList<>(vets));
+        this.vetsBySpecialtyId = new HashMap<>();
+        for (int i = 0; i < this.vets.size(); i++) {
+            for (Specialty specialty : this.vets.get(i).getSpecialtiesInternal()) {
+                this.vetsBySpecialtyId.computeIfAbsent(specialty.getId(), id -> new BitSet()).set(i);
+            }
+        }
+    }
+
+    /**
+     * Create an index over the given vets, keeping their iteration order.
+     */
+    public static VetSpecialtyIndex of(Collection<Vet> vets) {
+        return new VetSpecialtyIndex(vets);
+    }
+
+    /**
+     * Return all vets, in the order they were supplied.
+     */
+    public List<Vet> getAll() {
+        return this.vets;
+    }
+
+    /**
+     * Return the vets that have every one of the given specialties, in the order
+     * they were supplied, or all vets if no specialties are given.
+     */
+    public List<Vet> findBySpecialties(Collection<Specialty> specialties) {
+        BitSet matches = null;
+        for (Specialty specialty : specialties) {
+            BitSet vets = this.vetsBySpecialtyId.get(specialty.getId());
+            if (vets == null) {
+                return Collections.emptyList();
+            }
+            if (matches == null) {
+                matches = (BitSet) vets.clone();
+            }
+            else {
+                matches.and(vets);
+            }
+        }
+        if (matches == null) {
+            return this.vets;
+        }
+        List<Vet> found = new ArrayList<>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            found.add(this.vets.get(i));
+        }
+        return found;
+    }
+
+}
@@ -23,12 +23,15 @@ import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.samples.petclinic.model.JdbcBatchInsert;
+import org.springframework.samples.petclinic.model.JdbcIdAllocator;
 import org.springframework.samples.petclinic.owner.JdbcPetRowMapper;
+import org.springframework.samples.petclinic.owner.OwnerCache;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * A simple JDBC-based implementation of the {@link VisitRepository} interface.
@@ -46,32 +49,52 @@ public class JdbcVisitRepositoryImpl implements VisitRepository {
 
     private NamedParameterJdbcTemplate jdbcTemplate;
 
-    private SimpleJdbcInsert insertVisit;
+    private JdbcBatchInsert<Visit> insertVisits;
+
+    private OwnerCache ownerCache;
+
+    private VisitWriteBehindQueue writeBehindQueue;
 
     @Autowired
-    public JdbcVisitRepositoryImpl(DataSource dataSource) {
+    public JdbcVisitRepositoryImpl(DataSource dataSource, OwnerCache ownerCache,
+            VisitWriteBehindQueue writeBehindQueue, JdbcIdAllocator idAllocator) {
         this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
 
-        this.insertVisit = new SimpleJdbcInsert(dataSource).withTableName("visits").usingGeneratedKeyColumns("id");
+        this.insertVisits = createInsert(this.jdbcTemplate.getJdbcOperations(), idAllocator);
+
+        this.ownerCache = ownerCache;
+
+        this.writeBehindQueue = writeBehindQueue;
     }
 
+    /**
+     * New visits go through the {@link VisitWriteBehindQueue} when it is enabled,
+     * unless the caller has a transaction of its own that the insert must join.
+     */
     @Override
     public void save(Visit visit) throws DataAccessException {
-        if (visit.isNew()) {
-            Number newKey = this.insertVisit.executeAndReturnKey(createVisitParameterSource(visit));
-            visit.setId(newKey.intValue());
+        if (visit.isNew() && this.writeBehindQueue.isEnabled()
+                && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            this.writeBehindQueue.insert(visit);
+        } else if (visit.isNew()) {
+            this.insertVisits.insert(visit);
         } else {
             throw new UnsupportedOperationException("Visit update not supported");
         }
+        this.ownerCache.evictByPetId(visit.getPetId());
     }
 
     /**
-     * Creates a {@link MapSqlParameterSource} based on data values from the
-     * supplied {@link Visit} instance.
+     * Creates the insert for new {@link Visit} instances, shared with the
+     * {@link VisitWriteBehindQueue}.
      */
-    private MapSqlParameterSource createVisitParameterSource(Visit visit) {
-        return new MapSqlParameterSource().addValue("id", visit.getId()).addValue("visit_date", visit.getDate())
-                .addValue("description", visit.getDescription()).addValue("pet_id", visit.getPetId());
+    static JdbcBatchInsert<Visit> createInsert(JdbcOperations jdbcOperations, JdbcIdAllocator idAllocator) {
+        return new JdbcBatchInsert<>(jdbcOperations, idAllocator, "visits",
+                "INSERT INTO visits (id, pet_id, visit_date, description) VALUES (?, ?, ?, ?)", (ps, visit) -> {
+                    ps.setInt(2, visit.getPetId());
+                    ps.setObject(3, visit.getDate());
+                    ps.setString(4, visit.getDescription());
+                });
     }
 
     @Override
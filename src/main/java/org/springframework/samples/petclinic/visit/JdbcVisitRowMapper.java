@@ -20,19 +20,24 @@ import java.sql.SQLException;
 import java.time.LocalDate;
 
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.samples.petclinic.model.ColumnIndexRowMapper;
 
 /**
  * {@link RowMapper} implementation mapping data from a {@link ResultSet} to the
  * corresponding properties of the {@link Visit} class.
  */
-public class JdbcVisitRowMapper implements RowMapper<Visit> {
+public class JdbcVisitRowMapper extends ColumnIndexRowMapper<Visit> {
+
+    public JdbcVisitRowMapper() {
+        super("visit_id", "visit_date", "description");
+    }
 
     @Override
-    public Visit mapRow(ResultSet rs, int row) throws SQLException {
+    protected Visit mapRow(ResultSet rs, int[] columns) throws SQLException {
         Visit visit = new Visit();
-        visit.setId(rs.getInt("visit_id"));
-        visit.setDate(rs.getObject("visit_date", LocalDate.class));
-        visit.setDescription(rs.getString("description"));
+        visit.setId(rs.getInt(columns[0]));
+        visit.setDate(rs.getObject(columns[1], LocalDate.class));
+        visit.setDescription(rs.getString(columns[2]));
         return visit;
     }
 }
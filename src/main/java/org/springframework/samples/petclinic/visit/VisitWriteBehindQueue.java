@@ -0,0 +1,342 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.model.JdbcBatchInsert;
+import org.springframework.samples.petclinic.model.JdbcIdAllocator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Optional write-behind path for new {@link Visit visits}, enabled with
+ * <code>petclinic.visit-write-behind.enabled</code>. Callers put their visit in a
+ * bounded queue of <code>petclinic.visit-write-behind.capacity</code> entries and
+ * wait; a single writer thread inserts whatever has queued up in JDBC batches in
+ * one transaction, as soon as <code>petclinic.visit-write-behind.batch-size</code>
+ * visits are waiting or <code>petclinic.visit-write-behind.max-delay</code> after
+ * the first of them. Each caller returns only once its group has committed, so a
+ * saved visit is as durable as with a direct insert, but many concurrent saves
+ * share one connection and one commit.
+ * <p>
+ * A group that fails is retried one visit at a time, so only the visits that
+ * cannot be inserted fail. When the queue is full, or the writer has stopped,
+ * visits are inserted directly, including any still queued when it stopped. A
+ * caller whose visit is still queued after
+ * <code>petclinic.visit-write-behind.timeout</code> takes it back and gets a
+ * {@link QueryTimeoutException}, so the visit is never written and may be saved
+ * again; a visit the writer has already taken is waited for. The queue depth is published as
+ * <code>petclinic.visits.write-behind.queue</code>, the rows and groups written
+ * as <code>petclinic.visits.write-behind.rows</code> and
+ * <code>petclinic.visits.write-behind.groups</code>, and the time taken to
+ * insert and commit each group as <code>petclinic.visits.write-behind.commit</code>.
+ */
+@Component
+public class VisitWriteBehindQueue implements MeterBinder, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(VisitWriteBehindQueue.class);
+
+    static final int DEFAULT_CAPACITY = 10000;
+
+    static final int DEFAULT_BATCH_SIZE = 100;
+
+    static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(5);
+
+    static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final JdbcBatchInsert<Visit> batchInsert;
+
+    private final TransactionOperations transactions;
+
+    private final BlockingQueue<PendingVisit> queue;
+
+    private final int batchSize;
+
+    private final long maxDelayNanos;
+
+    private final long timeoutNanos;
+
+    private final Thread writer;
+
+    private final AtomicLong rows = new AtomicLong();
+
+    private final AtomicLong groups = new AtomicLong();
+
+    private volatile boolean running;
+
+    private volatile Timer commitTimer;
+
+    @Autowired
+    public VisitWriteBehindQueue(DataSource dataSource, JdbcIdAllocator idAllocator,
+            PlatformTransactionManager transactionManager, Environment environment) {
+        this(JdbcVisitRepositoryImpl.createInsert(new JdbcTemplate(dataSource), idAllocator),
+                new TransactionTemplate(transactionManager),
+                environment.getProperty("petclinic.visit-write-behind.enabled", Boolean.class, false)
+                        ? environment.getProperty("petclinic.visit-write-behind.capacity", Integer.class,
+                                DEFAULT_CAPACITY)
+                        : 0,
+                environment.getProperty("petclinic.visit-write-behind.batch-size", Integer.class,
+                        DEFAULT_BATCH_SIZE),
+                environment.getProperty("petclinic.visit-write-behind.max-delay", Duration.class,
+                        DEFAULT_MAX_DELAY),
+                environment.getProperty("petclinic.visit-write-behind.timeout", Duration.class, DEFAULT_TIMEOUT));
+    }
+
+    /**
+     * @param capacity the number of visits that may wait to be written, or 0 to
+     * disable the queue
+     */
+    VisitWriteBehindQueue(JdbcBatchInsert<Visit> batchInsert, TransactionOperations transactions, int capacity,
+            int batchSize, Duration maxDelay, Duration timeout) {
+        this.batchInsert = batchInsert;
+        this.transactions = transactions;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+        if (capacity > 0) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.running = true;
+            this.writer = new Thread(this::writeGroups, "visit-write-behind");
+            this.writer.setDaemon(true);
+            this.writer.start();
+            logger.info("Writing visits behind in groups of up to " + batchSize);
+        }
+        else {
+            this.queue = null;
+            this.writer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.queue != null;
+    }
+
+    /**
+     * Insert a new visit and assign its id, returning once the insert has been
+     * committed.
+     */
+    public void insert(Visit visit) {
+        PendingVisit pending = new PendingVisit(visit);
+        boolean queued = this.running && this.queue.offer(pending);
+        if (queued && !this.running) {
+            // the writer may have stopped before it could see the visit
+            queued = !this.queue.remove(pending);
+        }
+        if (!queued || !await(pending)) {
+            insertAndCommit(Collections.singletonList(visit));
+        }
+    }
+
+    /**
+     * Wait for the writer to handle the given visit, returning whether it wrote it.
+     */
+    private boolean await(PendingVisit pending) {
+        try {
+            try {
+                return pending.result.get(this.timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException ex) {
+                if (this.queue.remove(pending)) {
+                    throw new QueryTimeoutException(
+                            "Visit not written within " + Duration.ofNanos(this.timeoutNanos), ex);
+                }
+                // the writer has taken it and completes it either way
+                return pending.result.get();
+            }
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("Interrupted while waiting for visit to be written", ex);
+        }
+    }
+
+    public int getQueueDepth() {
+        return this.queue != null ? this.queue.size() : 0;
+    }
+
+    public long getRowCount() {
+        return this.rows.get();
+    }
+
+    public long getGroupCount() {
+        return this.groups.get();
+    }
+
+    private void writeGroups() {
+        try {
+            writeUntilStopped();
+        }
+        finally {
+            // hand back whatever is left, also when a write failed with an Error
+            this.running = false;
+            List<PendingVisit> left = new ArrayList<>();
+            this.queue.drainTo(left);
+            for (PendingVisit pending : left) {
+                pending.result.complete(false);
+            }
+        }
+    }
+
+    private void writeUntilStopped() {
+        List<PendingVisit> group = new ArrayList<>(this.batchSize);
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                PendingVisit first = this.queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                long deadline = System.nanoTime() + this.maxDelayNanos;
+                while (group.size() < this.batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingVisit next = remaining > 0 ? this.queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        this.queue.drainTo(group, this.batchSize - group.size());
+                        break;
+                    }
+                    group.add(next);
+                }
+            }
+            catch (InterruptedException ex) {
+                this.running = false;
+            }
+            if (!group.isEmpty()) {
+                write(group);
+                group.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingVisit> group) {
+        List<Visit> visits = new ArrayList<>(group.size());
+        for (PendingVisit pending : group) {
+            visits.add(pending.visit);
+        }
+        try {
+            insertAndCommit(visits);
+            for (PendingVisit pending : group) {
+                pending.result.complete(true);
+            }
+        }
+        catch (RuntimeException ex) {
+            if (group.size() == 1) {
+                group.get(0).result.completeExceptionally(ex);
+                return;
+            }
+            logger.debug("Could not write group of " + group.size() + " visits, retrying one at a time", ex);
+            for (PendingVisit pending : group) {
+                write(Collections.singletonList(pending));
+            }
+        }
+        catch (Error ex) {
+            for (PendingVisit pending : group) {
+                pending.result.completeExceptionally(ex);
+            }
+            throw ex;
+        }
+    }
+
+    private void insertAndCommit(List<Visit> visits) {
+        long start = System.nanoTime();
+        this.transactions.executeWithoutResult(status -> this.batchInsert.insert(visits, this.batchSize));
+        Timer commitTimer = this.commitTimer;
+        if (commitTimer != null) {
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        this.rows.addAndGet(visits.size());
+        this.groups.incrementAndGet();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.commitTimer = Timer.builder("petclinic.visits.write-behind.commit")
+                .description("The time taken to insert and commit a group of visits.").register(registry);
+        Gauge.builder("petclinic.visits.write-behind.queue", this, VisitWriteBehindQueue::getQueueDepth)
+                .description("The number of visits waiting to be written.").register(registry);
+        FunctionCounter.builder("petclinic.visits.write-behind.rows", this, VisitWriteBehindQueue::getRowCount)
+                .description("The number of visits written.").register(registry);
+        FunctionCounter.builder("petclinic.visits.write-behind.groups", this, VisitWriteBehindQueue::getGroupCount)
+                .description("The number of transactions the visits were written in.").register(registry);
+    }
+
+    /**
+     * Stop accepting visits and wait for the writer to write those already queued.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (this.writer != null) {
+            this.running = false;
+            this.writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private static final class PendingVisit {
+
+        private final Visit visit;
+
+        /**
+         * Whether the writer wrote the visit, or left it to the caller.
+         */
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private PendingVisit(Visit visit) {
+            this.visit = visit;
+        }
+
+    }
+
+}
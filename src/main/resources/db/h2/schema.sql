@@ -1,3 +1,5 @@
+DROP TABLE id_blocks IF EXISTS;
+DROP TABLE owner_summary IF EXISTS;
 DROP TABLE vet_specialties IF EXISTS;
 DROP TABLE vets IF EXISTS;
 DROP TABLE specialties IF EXISTS;
@@ -41,11 +43,11 @@ CREATE TABLE owners (
   city       VARCHAR(80),
   telephone  VARCHAR(20)
 );
-CREATE INDEX owners_last_name ON owners (last_name);
+CREATE INDEX owners_last_name ON owners (last_name, id);
 
 CREATE TABLE pets (
   id         INTEGER IDENTITY PRIMARY KEY,
-  name       VARCHAR(30),
+  name       VARCHAR_IGNORECASE(30),
   birth_date DATE,
   type_id    INTEGER NOT NULL,
   owner_id   INTEGER NOT NULL
@@ -53,6 +55,7 @@ CREATE TABLE pets (
 ALTER TABLE pets ADD CONSTRAINT fk_pets_owners FOREIGN KEY (owner_id) REFERENCES owners (id);
 ALTER TABLE pets ADD CONSTRAINT fk_pets_types FOREIGN KEY (type_id) REFERENCES types (id);
 CREATE INDEX pets_name ON pets (name);
+ALTER TABLE pets ADD CONSTRAINT uk_pets_owner_name UNIQUE (owner_id, name);
 
 CREATE TABLE visits (
   id          INTEGER IDENTITY PRIMARY KEY,
@@ -61,4 +64,22 @@ CREATE TABLE visits (
   description VARCHAR(255)
 );
 ALTER TABLE visits ADD CONSTRAINT fk_visits_pets FOREIGN KEY (pet_id) REFERENCES pets (id);
-CREATE INDEX visits_pet_id ON visits (pet_id);
+CREATE INDEX visits_pet_id_visit_date ON visits (pet_id, visit_date);
+
+CREATE TABLE owner_summary (
+  owner_id   INTEGER PRIMARY KEY,
+  first_name VARCHAR(30),
+  last_name  VARCHAR_IGNORECASE(30),
+  address    VARCHAR(255),
+  city       VARCHAR(80),
+  telephone  VARCHAR(20),
+  pet_count  INTEGER NOT NULL DEFAULT 0,
+  pet_names  CLOB
+);
+ALTER TABLE owner_summary ADD CONSTRAINT fk_owner_summary_owners FOREIGN KEY (owner_id) REFERENCES owners (id);
+CREATE INDEX owner_summary_last_name ON owner_summary (last_name, owner_id);
+
+CREATE TABLE id_blocks (
+  name    VARCHAR(30) PRIMARY KEY,
+  next_id INTEGER NOT NULL
+);
@@ -38,7 +38,7 @@ CREATE TABLE IF NOT EXISTS types (
 CREATE TABLE IF NOT EXISTS owners (
   id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
   first_name VARCHAR(30),
-  last_name VARCHAR(30),
+  last_name VARCHAR(30) CHARACTER SET utf8 COLLATE utf8_general_ci,
   address VARCHAR(255),
   city VARCHAR(80),
   telephone VARCHAR(20),
@@ -47,11 +47,12 @@ CREATE TABLE IF NOT EXISTS owners (
 
 CREATE TABLE IF NOT EXISTS pets (
   id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
-  name VARCHAR(30),
+  name VARCHAR(30) CHARACTER SET utf8 COLLATE utf8_general_ci,
   birth_date DATE,
   type_id INT(4) UNSIGNED NOT NULL,
   owner_id INT(4) UNSIGNED NOT NULL,
   INDEX(name),
+  UNIQUE (owner_id, name),
   FOREIGN KEY (owner_id) REFERENCES owners(id),
   FOREIGN KEY (type_id) REFERENCES types(id)
 ) engine=InnoDB;
@@ -61,5 +62,24 @@ CREATE TABLE IF NOT EXISTS visits (
   pet_id INT(4) UNSIGNED NOT NULL,
   visit_date DATE,
   description VARCHAR(255),
+  INDEX(pet_id, visit_date),
   FOREIGN KEY (pet_id) REFERENCES pets(id)
 ) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS owner_summary (
+  owner_id INT(4) UNSIGNED NOT NULL PRIMARY KEY,
+  first_name VARCHAR(30),
+  last_name VARCHAR(30) CHARACTER SET utf8 COLLATE utf8_general_ci,
+  address VARCHAR(255),
+  city VARCHAR(80),
+  telephone VARCHAR(20),
+  pet_count INT(4) UNSIGNED NOT NULL DEFAULT 0,
+  pet_names TEXT,
+  INDEX(last_name, owner_id),
+  FOREIGN KEY (owner_id) REFERENCES owners(id)
+) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS id_blocks (
+  name VARCHAR(30) NOT NULL PRIMARY KEY,
+  next_id INT(4) UNSIGNED NOT NULL
+) engine=InnoDB;
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataRetrievalFailureException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for {@link EntityIdMap}
+ */
+class EntityIdMapTests {
+
+    @Test
+    void shouldFindEntitiesById() {
+        EntityIdMap<BaseEntity> map = EntityIdMap.of(Arrays.asList(entity(3), entity(-1), entity(0)));
+        assertThat(map.get(3).getId()).isEqualTo(3);
+        assertThat(map.get(-1).getId()).isEqualTo(-1);
+        assertThat(map.getById(0).getId()).isEqualTo(0);
+        assertThat(map.get(4)).isNull();
+        assertThat(map.containsId(4)).isFalse();
+        assertThatThrownBy(() -> map.getById(4)).isInstanceOf(DataRetrievalFailureException.class)
+                .hasMessageContaining("4");
+    }
+
+    @Test
+    void shouldKeepInsertionOrderAndReplaceSameId() {
+        EntityIdMap<BaseEntity> map = new EntityIdMap<>();
+        BaseEntity first = entity(7);
+        BaseEntity replacement = entity(7);
+        map.put(first);
+        map.put(entity(2));
+        assertThat(map.put(replacement)).isSameAs(first);
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.values()).containsExactly(replacement, map.get(2));
+        assertThat(map.getIds()).containsExactly(7, 2);
+    }
+
+    @Test
+    void shouldGrowPastInitialCapacity() {
+        EntityIdMap<BaseEntity> map = new EntityIdMap<>();
+        List<BaseEntity> entities = new ArrayList<>();
+        for (int id = 0; id < 10_000; id++) {
+            // ids that collide in the low bits
+            BaseEntity entity = entity(id << 12);
+            entities.add(entity);
+            map.put(entity);
+        }
+        assertThat(map.size()).isEqualTo(10_000);
+        for (BaseEntity entity : entities) {
+            assertThat(map.get(entity.getId())).isSameAs(entity);
+        }
+        assertThat(map.get(1)).isNull();
+    }
+
+    private static BaseEntity entity(int id) {
+        BaseEntity entity = new BaseEntity();
+        entity.setId(id);
+        return entity;
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link JdbcIdAllocator}
+ */
+class JdbcIdAllocatorTests {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<JdbcIdAllocator> allocators = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        this.database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .build();
+        this.jdbcTemplate = new JdbcTemplate(this.database);
+        this.jdbcTemplate.execute("CREATE TABLE id_blocks (name VARCHAR(30) PRIMARY KEY, next_id INTEGER NOT NULL)");
+        this.jdbcTemplate.execute("CREATE TABLE owners (id INTEGER PRIMARY KEY)");
+        this.jdbcTemplate.execute("INSERT INTO owners VALUES (1), (2), (7)");
+        this.jdbcTemplate.execute("CREATE TABLE pets (id INTEGER PRIMARY KEY)");
+    }
+
+    @AfterEach
+    void shutdown() {
+        this.allocators.forEach(JdbcIdAllocator::destroy);
+        this.database.shutdown();
+    }
+
+    @Test
+    void shouldContinueAfterHighestExistingId() {
+        JdbcIdAllocator ids = allocator(10);
+        assertThat(ids.nextId("owners")).isEqualTo(8);
+        assertThat(ids.nextId("owners")).isEqualTo(9);
+        assertThat(ids.nextId("pets")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReserveOneBlockPerBlockSizeIds() {
+        JdbcIdAllocator ids = allocator(10);
+        ids.nextId("owners");
+        assertThat(nextUnreserved("owners")).isEqualTo(18);
+        for (int i = 0; i < 9; i++) {
+            ids.nextId("owners");
+        }
+        assertThat(nextUnreserved("owners")).isEqualTo(18);
+        assertThat(ids.nextId("owners")).isEqualTo(18);
+        assertThat(nextUnreserved("owners")).isEqualTo(28);
+    }
+
+    @Test
+    void shouldReserveRestOfLongListWithOneBlock() {
+        JdbcIdAllocator ids = allocator(10);
+        ids.nextId("pets");
+        List<BaseEntity> pets = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            pets.add(new BaseEntity());
+        }
+        ids.assignIds("pets", pets);
+        assertThat(pets.get(0).getId()).isEqualTo(2);
+        assertThat(pets.get(24).getId()).isEqualTo(26);
+        assertThat(nextUnreserved("pets")).isEqualTo(27);
+    }
+
+    @Test
+    void shouldKeepIdsOfSeveralNodesApart() throws Exception {
+        List<JdbcIdAllocator> nodes = new ArrayList<>();
+        nodes.add(allocator(5));
+        nodes.add(allocator(5));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                JdbcIdAllocator ids = nodes.get(i % 2);
+                results.add(executor.submit(() -> {
+                    List<Integer> taken = new ArrayList<>();
+                    for (int j = 0; j < 50; j++) {
+                        taken.add(ids.nextId("owners"));
+                    }
+                    return taken;
+                }));
+            }
+            List<Integer> all = new ArrayList<>();
+            for (Future<List<Integer>> result : results) {
+                all.addAll(result.get());
+            }
+            assertThat(all).hasSize(200).doesNotHaveDuplicates().allMatch(id -> id > 7);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldReserveWhileCallerHoldsLastPooledConnection() {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:" + getClass().getSimpleName() + "Pool");
+        pool.setMaximumPoolSize(2);
+        pool.setConnectionTimeout(250);
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(pool);
+            jdbcTemplate.execute("CREATE TABLE id_blocks (name VARCHAR(30) PRIMARY KEY, next_id INTEGER NOT NULL)");
+            jdbcTemplate.execute("CREATE TABLE owners (id INTEGER PRIMARY KEY)");
+            JdbcIdAllocator ids = new JdbcIdAllocator(pool, 10);
+            this.allocators.add(ids);
+            ids.afterSingletonsInstantiated();
+
+            // The caller's transaction takes the other connection
+            TransactionTemplate transactions = new TransactionTemplate(new DataSourceTransactionManager(pool));
+            List<Integer> taken = transactions.execute(status -> {
+                List<Integer> result = new ArrayList<>();
+                for (int i = 0; i < 15; i++) {
+                    result.add(ids.nextId("owners"));
+                }
+                return result;
+            });
+            assertThat(taken).hasSize(15).startsWith(1, 2).endsWith(15);
+        }
+        finally {
+            pool.close();
+        }
+    }
+
+    private JdbcIdAllocator allocator(int blockSize) {
+        JdbcIdAllocator ids = new JdbcIdAllocator(this.database,
+                new MockEnvironment().withProperty("petclinic.id-allocator.block-size", String.valueOf(blockSize)));
+        this.allocators.add(ids);
+        return ids;
+    }
+
+    private int nextUnreserved(String sequence) {
+        return this.jdbcTemplate.queryForObject("SELECT next_id FROM id_blocks WHERE name = ?", Integer.class,
+                sequence);
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for {@link NestedResultSetExtractor}
+ */
+class NestedResultSetExtractorTests {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setup() {
+        this.database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .build();
+        this.jdbcTemplate = new JdbcTemplate(this.database);
+        this.jdbcTemplate.execute("CREATE TABLE tree (root_id INTEGER, child_id INTEGER, leaf_id INTEGER)");
+        this.jdbcTemplate.execute("INSERT INTO tree VALUES (1, 10, 100), (1, 10, 101), (1, 11, NULL), "
+                + "(2, NULL, NULL), (3, 30, 300)");
+    }
+
+    @AfterEach
+    void shutdown() {
+        this.database.shutdown();
+    }
+
+    @Test
+    void shouldBuildThreeLevelsFromOrderedRows() {
+        List<Node> roots = this.jdbcTemplate.query("SELECT * FROM tree ORDER BY root_id, child_id, leaf_id",
+                extractor());
+        assertThat(roots).extracting(node -> node.id).containsExactly(1, 2, 3);
+        assertThat(roots.get(0).children).extracting(node -> node.id).containsExactly(10, 11);
+        assertThat(roots.get(0).children.get(0).children).extracting(node -> node.id).containsExactly(100, 101);
+        assertThat(roots.get(0).children.get(1).children).isEmpty();
+        assertThat(roots.get(1).children).isEmpty();
+        assertThat(roots.get(2).children.get(0).children).extracting(node -> node.id).containsExactly(300);
+    }
+
+    @Test
+    void shouldStreamEachRootOnceComplete() {
+        final List<String> events = new ArrayList<>();
+        NestedResultSetExtractor<Node> extractor = NestedResultSetExtractor
+                .root("root_id", (rs, row) -> {
+                    events.add("row " + rs.getInt("root_id"));
+                    return new Node(rs.getInt("root_id"));
+                }).nest("child_id", (rs, row) -> new Node(rs.getInt("child_id")), Node::add)
+                .nest("leaf_id", (rs, row) -> new Node(rs.getInt("leaf_id")), Node::add).build();
+        Integer count = this.jdbcTemplate.query("SELECT * FROM tree ORDER BY root_id, child_id, leaf_id",
+                extractor.streaming(root -> events.add("root " + root.id + " with " + root.children.size())));
+        assertThat(count).isEqualTo(3);
+        assertThat(events).containsExactly("row 1", "root 1 with 2", "row 2", "root 2 with 0", "row 3",
+                "root 3 with 1");
+    }
+
+    @Test
+    void shouldAcceptLeavesInAnyOrder() {
+        List<Node> roots = this.jdbcTemplate.query("SELECT * FROM tree ORDER BY root_id, child_id, leaf_id DESC",
+                extractor());
+        assertThat(roots.get(0).children.get(0).children).extracting(node -> node.id).containsExactly(101, 100);
+    }
+
+    @Test
+    void shouldGroupRootsOnKeyChange() {
+        List<Node> roots = this.jdbcTemplate.query("SELECT * FROM tree ORDER BY root_id DESC, child_id, leaf_id",
+                extractor());
+        assertThat(roots).extracting(node -> node.id).containsExactly(3, 2, 1);
+        assertThat(roots.get(2).children).extracting(node -> node.id).containsExactly(10, 11);
+        assertThat(roots.get(2).children.get(0).children).extracting(node -> node.id).containsExactly(100, 101);
+    }
+
+    @Test
+    void shouldGroupChildrenOnKeyChange() {
+        // the leaf of child 11 is NULL, which sorts before the leaves of child 10
+        List<Node> roots = this.jdbcTemplate.query("SELECT * FROM tree ORDER BY root_id, leaf_id", extractor());
+        assertThat(roots).extracting(node -> node.id).containsExactly(1, 2, 3);
+        assertThat(roots.get(0).children).extracting(node -> node.id).containsExactly(11, 10);
+        assertThat(roots.get(0).children.get(1).children).extracting(node -> node.id).containsExactly(100, 101);
+    }
+
+    @Test
+    void shouldRejectNullRootKey() {
+        this.jdbcTemplate.update("INSERT INTO tree VALUES (NULL, NULL, NULL)");
+        assertThatThrownBy(() -> this.jdbcTemplate.query("SELECT * FROM tree ORDER BY root_id", extractor()))
+                .isInstanceOf(InvalidDataAccessApiUsageException.class);
+    }
+
+    private static NestedResultSetExtractor<Node> extractor() {
+        return NestedResultSetExtractor.root("root_id", (rs, row) -> new Node(rs.getInt("root_id")))
+                .nest("child_id", (rs, row) -> new Node(rs.getInt("child_id")), Node::add)
+                .nest("leaf_id", (rs, row) -> new Node(rs.getInt("leaf_id")), Node::add).build();
+    }
+
+    private static final class Node {
+
+        private final int id;
+
+        private final List<Node> children = new ArrayList<>();
+
+        private Node(int id) {
+            this.id = id;
+        }
+
+        private void add(Node child) {
+            this.children.add(child);
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.model;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.samples.petclinic.owner.JdbcOwnerRowMapper;
+import org.springframework.samples.petclinic.owner.JdbcPetTypeRowMapper;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.PetType;
+import org.springframework.samples.petclinic.vet.JdbcVetRowMapper;
+import org.springframework.samples.petclinic.vet.Vet;
+
+/**
+ * Compares the hand-written {@link ColumnIndexRowMapper ColumnIndexRowMappers}
+ * with the {@link BeanPropertyRowMapper} they replaced, mapping an in-memory
+ * {@link java.sql.ResultSet} so that only the mapping itself is measured. Run with
+ * <code>main</code> from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapperBenchmark {
+
+    @Param({ "1000" })
+    private int rows;
+
+    private SimpleResultSet owners;
+
+    private SimpleResultSet petTypes;
+
+    private SimpleResultSet vets;
+
+    @Setup
+    public void setup() {
+        this.owners = resultSet("id", "first_name", "last_name", "address", "city", "telephone");
+        this.petTypes = resultSet("id", "name");
+        this.vets = resultSet("id", "first_name", "last_name");
+        for (int i = 0; i < this.rows; i++) {
+            this.owners.addRow(i, "George", "Franklin" + i, "110 W. Liberty St.", "Madison", "6085551023");
+            this.petTypes.addRow(i, "type" + i);
+            this.vets.addRow(i, "James", "Carter" + i);
+        }
+    }
+
+    @Benchmark
+    public List<Owner> ownersBeanProperty() throws SQLException {
+        return map(this.owners, BeanPropertyRowMapper.newInstance(Owner.class));
+    }
+
+    @Benchmark
+    public List<Owner> ownersColumnIndex() throws SQLException {
+        return map(this.owners, new JdbcOwnerRowMapper());
+    }
+
+    @Benchmark
+    public List<PetType> petTypesBeanProperty() throws SQLException {
+        return map(this.petTypes, BeanPropertyRowMapper.newInstance(PetType.class));
+    }
+
+    @Benchmark
+    public List<PetType> petTypesColumnIndex() throws SQLException {
+        return map(this.petTypes, new JdbcPetTypeRowMapper());
+    }
+
+    @Benchmark
+    public List<Vet> vetsBeanProperty() throws SQLException {
+        return map(this.vets, BeanPropertyRowMapper.newInstance(Vet.class));
+    }
+
+    @Benchmark
+    public List<Vet> vetsColumnIndex() throws SQLException {
+        return map(this.vets, new JdbcVetRowMapper());
+    }
+
+    private static <T> List<T> map(SimpleResultSet rs, RowMapper<T> mapper) throws SQLException {
+        rs.beforeFirst();
+        List<T> results = new ArrayList<>();
+        int rowNum = 0;
+        while (rs.next()) {
+            results.add(mapper.mapRow(rs, rowNum++));
+        }
+        return results;
+    }
+
+    private static SimpleResultSet resultSet(String... columns) {
+        SimpleResultSet rs = new SimpleResultSet();
+        rs.setAutoClose(false);
+        for (int i = 0; i < columns.length; i++) {
+            rs.addColumn(columns[i], i == 0 ? Types.INTEGER : Types.VARCHAR, 255, 0);
+        }
+        return rs;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RowMapperBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
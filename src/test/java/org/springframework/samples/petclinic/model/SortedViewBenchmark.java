@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.beans.support.MutableSortDefinition;
+import org.springframework.beans.support.PropertyComparator;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.vet.Specialty;
+import org.springframework.samples.petclinic.vet.Vet;
+
+/**
+ * Compares the cached sorted views of {@link Owner#getPets()} and
+ * {@link Vet#getSpecialties()} with the copy and {@link PropertyComparator} sort
+ * they replaced, and with a copy and typed {@link Comparator} sort on every call.
+ * Run with <code>main</code> from the test classpath; add <code>-prof gc</code>
+ * on the JMH command line to see the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortedViewBenchmark {
+
+    private static final Comparator<NamedEntity> BY_NAME = Comparator.comparing(NamedEntity::getName,
+            Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+
+    @Param({ "3", "200" })
+    private int size;
+
+    private Owner owner;
+
+    private Vet vet;
+
+    private final List<Pet> pets = new ArrayList<>();
+
+    private final List<Specialty> specialties = new ArrayList<>();
+
+    /**
+     * Fills the owner and vet, and unsorted copies of what they hold, in an order
+     * scattered across the names.
+     */
+    @Setup
+    public void setup() {
+        this.owner = new Owner();
+        this.vet = new Vet();
+        for (int i = 0; i < this.size; i++) {
+            Pet pet = new Pet();
+            pet.setId(i);
+            pet.setName("Pet" + ((i * 7919) % this.size));
+            this.owner.addPet(pet);
+            this.pets.add(pet);
+            Specialty specialty = new Specialty();
+            specialty.setId(i);
+            specialty.setName("specialty" + ((i * 7919) % this.size));
+            this.vet.addSpecialty(specialty);
+            this.specialties.add(specialty);
+        }
+    }
+
+    @Benchmark
+    public List<Pet> petsPropertyComparator() {
+        List<Pet> sortedPets = new ArrayList<>(this.pets);
+        PropertyComparator.sort(sortedPets, new MutableSortDefinition("name", true, true));
+        return Collections.unmodifiableList(sortedPets);
+    }
+
+    @Benchmark
+    public List<Pet> petsTypedComparator() {
+        List<Pet> sortedPets = new ArrayList<>(this.pets);
+        sortedPets.sort(BY_NAME);
+        return Collections.unmodifiableList(sortedPets);
+    }
+
+    @Benchmark
+    public List<Pet> petsCachedView() {
+        return this.owner.getPets();
+    }
+
+    @Benchmark
+    public List<Specialty> specialtiesPropertyComparator() {
+        List<Specialty> sortedSpecs = new ArrayList<>(this.specialties);
+        PropertyComparator.sort(sortedSpecs, new MutableSortDefinition("name", true, true));
+        return Collections.unmodifiableList(sortedSpecs);
+    }
+
+    @Benchmark
+    public List<Specialty> specialtiesTypedComparator() {
+        List<Specialty> sortedSpecs = new ArrayList<>(this.specialties);
+        sortedSpecs.sort(BY_NAME);
+        return Collections.unmodifiableList(sortedSpecs);
+    }
+
+    @Benchmark
+    public List<Specialty> specialtiesCachedView() {
+        return this.vet.getSpecialties();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SortedViewBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.samples.petclinic.visit.Visit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link OwnerCache}
+ */
+class OwnerCacheTests {
+
+    private final OwnerCache cache = new OwnerCache(2);
+
+    @Test
+    void shouldReturnCopiesOfCachedOwners() {
+        this.cache.put(owner(1, 10), this.cache.startLoad());
+
+        Owner first = this.cache.get(1);
+        first.setLastName("Changed");
+        first.getPets().get(0).addVisit(new Visit());
+
+        Owner second = this.cache.get(1);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getLastName()).isEqualTo("Owner1");
+        assertThat(second.getPets().get(0).getVisits()).hasSize(1);
+        assertThat(second.getPets().get(0).getOwner()).isSameAs(second);
+        assertThat(this.cache.get(2)).isNull();
+        assertThat(this.cache.getHitCount()).isEqualTo(2);
+        assertThat(this.cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedOwner() {
+        this.cache.put(owner(1, 10), this.cache.startLoad());
+        this.cache.put(owner(2, 20), this.cache.startLoad());
+        this.cache.get(1);
+        this.cache.put(owner(3, 30), this.cache.startLoad());
+
+        assertThat(this.cache.size()).isEqualTo(2);
+        assertThat(this.cache.get(2)).isNull();
+        assertThat(this.cache.findOwnerIdByPetId(20)).isNull();
+        assertThat(this.cache.findOwnerIdByPetId(30)).isEqualTo(3);
+        assertThat(this.cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldInvalidateOnWrites() {
+        this.cache.put(owner(1, 10), this.cache.startLoad());
+        this.cache.evictByPetId(10);
+        assertThat(this.cache.get(1)).isNull();
+
+        // a load that started before a write must not be cached
+        long loadToken = this.cache.startLoad();
+        this.cache.evict(2);
+        this.cache.put(owner(1, 10), loadToken);
+        assertThat(this.cache.get(1)).isNull();
+    }
+
+    @Test
+    void shouldNotCacheLoadOverlappingWriteToUncachedPet() {
+        // the load reads pet 10 before its visit is saved, but nothing is cached yet
+        long loadToken = this.cache.startLoad();
+        this.cache.evictByPetId(10);
+        this.cache.put(owner(1, 10), loadToken);
+        assertThat(this.cache.get(1)).isNull();
+
+        this.cache.put(owner(1, 10), this.cache.startLoad());
+        assertThat(this.cache.get(1)).isNotNull();
+    }
+
+    private Owner owner(int id, int petId) {
+        Owner owner = new Owner();
+        owner.setId(id);
+        owner.setLastName("Owner" + id);
+        Pet pet = new Pet();
+        pet.setId(petId);
+        pet.setName("Pet" + petId);
+        owner.addPet(pet);
+        Visit visit = new Visit();
+        visit.setId(petId);
+        pet.addVisit(visit);
+        return owner;
+    }
+
+}
@@ -1,5 +1,8 @@
 package org.springframework.samples.petclinic.owner;
 
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,11 +12,18 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
@@ -73,16 +83,29 @@ class OwnerControllerTests {
 
     @Test
     public void testProcessFindFormSuccess() throws Exception {
-        given(this.owners.findByLastName(""))
-                .willReturn(Lists.newArrayList(george, new Owner()));
+        given(this.owners.findByLastName("", null, 20, true, OwnerFetchPlan.SUMMARY)).willReturn(
+                new OwnerPage(Lists.newArrayList(george, new Owner()), 20, null, 2L));
         mockMvc.perform(get("/owners")).andExpect(status().isOk())
                 .andExpect(view().name("owners/ownersList"));
     }
 
+    @Test
+    public void testProcessFindFormNextPage() throws Exception {
+        given(this.owners.findByLastName(eq(""), any(OwnerPage.Cursor.class), eq(1),
+                eq(false), eq(OwnerFetchPlan.SUMMARY))).willReturn(new OwnerPage(Lists.newArrayList(george), 1,
+                        new OwnerPage.Cursor("Franklin", TEST_OWNER_ID), null));
+        mockMvc.perform(get("/owners").param("size", "1").param("page", "2")
+                .param("total", "3").param("afterName", "Davis").param("afterId", "4"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("pageNumber", 2))
+                .andExpect(model().attribute("pageCount", 3L))
+                .andExpect(view().name("owners/ownersList"));
+    }
+
     @Test
     public void testProcessFindFormByLastName() throws Exception {
-        given(this.owners.findByLastName(george.getLastName()))
-                .willReturn(Lists.newArrayList(george));
+        given(this.owners.findByLastName(george.getLastName(), null, 20, true, OwnerFetchPlan.SUMMARY))
+                .willReturn(new OwnerPage(Lists.newArrayList(george), 20, null, 1L));
         mockMvc.perform(get("/owners").param("lastName", "Franklin"))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(view().name("redirect:/owners/" + TEST_OWNER_ID));
@@ -90,6 +113,8 @@ class OwnerControllerTests {
 
     @Test
     public void testProcessFindFormNoOwnersFound() throws Exception {
+        given(this.owners.findByLastName("Unknown Surname", null, 20, true, OwnerFetchPlan.SUMMARY))
+                .willReturn(new OwnerPage(Lists.emptyList(), 20, null, 0L));
         mockMvc.perform(get("/owners").param("lastName", "Unknown Surname"))
                 .andExpect(status().isOk())
                 .andExpect(model().attributeHasFieldErrors("owner", "lastName"))
@@ -98,6 +123,38 @@ class OwnerControllerTests {
                 .andExpect(view().name("owners/findOwners"));
     }
 
+    @Test
+    public void testSuggestLastNames() throws Exception {
+        given(this.owners.findLastNamesStartingWith("da", 10))
+                .willReturn(Lists.newArrayList("Davis"));
+        mockMvc.perform(get("/owners/suggest").param("prefix", "da"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0]").value("Davis"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExportOwners() throws Exception {
+        willAnswer(invocation -> {
+            ((Consumer<Owner>) invocation.getArgument(1)).accept(george);
+            ((Consumer<Owner>) invocation.getArgument(1)).accept(george);
+            return null;
+        }).given(this.owners).exportAll(anyInt(), any());
+        mockMvc.perform(get("/owners/export").param("format", "csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string(containsString(
+                        "1,George,Franklin,110 W. Liberty St.,Madison,6085551023,,,,,,,\r\n")));
+        String line = "{\"id\":1,\"firstName\":\"George\",\"lastName\":\"Franklin\","
+                + "\"address\":\"110 W. Liberty St.\",\"city\":\"Madison\",\"telephone\":\"6085551023\","
+                + "\"pets\":[]}\n";
+        mockMvc.perform(get("/owners/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes((line + line).getBytes(StandardCharsets.UTF_8)));
+        mockMvc.perform(get("/owners/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testInitCreationForm() throws Exception {
         mockMvc.perform(get("/owners/new")).andExpect(status().isOk())
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataRetrievalFailureException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for {@link OwnerFetchExecutor}
+ */
+class OwnerFetchExecutorTests {
+
+    private OwnerFetchExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        if (this.executor != null) {
+            this.executor.destroy();
+        }
+    }
+
+    @Test
+    void shouldRunQueriesConcurrently() throws Exception {
+        this.executor = new OwnerFetchExecutor(Executors.newFixedThreadPool(2));
+        final CountDownLatch started = new CountDownLatch(2);
+        CompletableFuture<String> first = this.executor.submit("first", () -> await(started));
+        CompletableFuture<String> second = this.executor.submit("second", () -> await(started));
+        assertThat(this.executor.isParallel()).isTrue();
+        assertThat(OwnerFetchExecutor.join(first)).isNotEqualTo(Thread.currentThread().getName());
+        assertThat(OwnerFetchExecutor.join(second)).isNotEqualTo(OwnerFetchExecutor.join(first));
+    }
+
+    @Test
+    void shouldRunQueriesOnCallingThreadWhenNotParallel() {
+        this.executor = new OwnerFetchExecutor((ExecutorService) null);
+        CompletableFuture<String> result = this.executor.submit("owner", () -> Thread.currentThread().getName());
+        assertThat(this.executor.isParallel()).isFalse();
+        assertThat(result).isDone();
+        assertThat(OwnerFetchExecutor.join(result)).isEqualTo(Thread.currentThread().getName());
+    }
+
+    @Test
+    void shouldRethrowQueryFailures() {
+        this.executor = new OwnerFetchExecutor(Executors.newSingleThreadExecutor());
+        CompletableFuture<Object> result = this.executor.submit("owner", () -> {
+            throw new DataRetrievalFailureException("Cannot find Owner: 1");
+        });
+        assertThatThrownBy(() -> OwnerFetchExecutor.join(result))
+                .isInstanceOf(DataRetrievalFailureException.class).hasMessage("Cannot find Owner: 1");
+    }
+
+    @Test
+    void shouldTimeQueriesAndFetches() {
+        this.executor = new OwnerFetchExecutor(Executors.newSingleThreadExecutor());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        this.executor.bindTo(registry);
+        this.executor.timeFetch(() -> OwnerFetchExecutor.join(this.executor.submit("pets", () -> "pets")));
+        assertThat(registry.get("petclinic.owner.query").tag("query", "pets").timer().count()).isEqualTo(1);
+        assertThat(registry.get("petclinic.owner.fetch").tag("mode", "parallel").timer().count()).isEqualTo(1);
+    }
+
+    private static String await(CountDownLatch started) {
+        started.countDown();
+        try {
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return Thread.currentThread().getName();
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.willAnswer;
+
+/**
+ * Test class for {@link OwnerImporter}
+ */
+@ExtendWith(MockitoExtension.class)
+class OwnerImporterTests {
+
+    @Mock
+    private OwnerRepository owners;
+
+    @Mock
+    private PetRepository pets;
+
+    private final List<List<Owner>> savedOwners = new ArrayList<>();
+
+    private final List<Pet> savedPets = new ArrayList<>();
+
+    private OwnerImporter importer;
+
+    @BeforeEach
+    void setup() {
+        PetType dog = new PetType();
+        dog.setId(2);
+        dog.setName("dog");
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.afterPropertiesSet();
+        this.importer = new OwnerImporter(this.owners, this.pets,
+                NamedEntityIndex.of(Collections.singletonList(dog)), validator,
+                TransactionOperations.withoutTransaction(), 10, 2);
+        willAnswer(invocation -> this.savedOwners.add(new ArrayList<>(invocation.getArgument(0))))
+                .given(this.owners).saveAll(anyList(), anyInt());
+        willAnswer(invocation -> this.savedPets.addAll(invocation.getArgument(0)))
+                .given(this.pets).saveAll(anyList(), anyInt());
+    }
+
+    @Test
+    void shouldImportValidOwnersInChunks() throws Exception {
+        String csv = "owner_id,first_name,last_name,address,city,telephone,pet_id,pet_name,birth_date,type\r\n"
+                + "1,George,Franklin,110 W. Liberty St.,Madison,6085551023,1,Leo,2010-09-07,dog\r\n"
+                + "1,George,Franklin,110 W. Liberty St.,Madison,6085551023,2,Max,2012-09-04,dog\r\n"
+                + "2,Betty,Davis,\"638 Cardinal Ave., Apt \"\"B\"\"\",Sun Prairie,6085551749,,,,\r\n"
+                + "3,Eduardo,Rodriquez,2693 Commerce St.,,6085558763,,,,\r\n"
+                + "4,Harold,Davis,563 Friendly St.,Windsor,6085553198,3,Iggy,2010-11-30,lizard\r\n"
+                + "5,Jean,Coleman,105 N. Lake St.,Monona,6085552654,,,,\r\n";
+        OwnerImporter.Result result = this.importer.importOwners(OwnerExportFormat.CSV
+                .openReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))));
+
+        assertThat(result.getOwners()).isEqualTo(3);
+        assertThat(result.getPets()).isEqualTo(2);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors()).hasSize(2);
+        assertThat(result.getErrors().get(0)).startsWith("record 3: owner.city");
+        assertThat(result.getErrors().get(1)).startsWith("record 4: pet.type");
+        assertThat(this.savedOwners).hasSize(2);
+        assertThat(this.savedOwners.get(0)).extracting(Owner::getLastName).containsExactly("Franklin",
+                "Davis");
+        assertThat(this.savedOwners.get(0).get(1).getAddress()).isEqualTo("638 Cardinal Ave., Apt \"B\"");
+        assertThat(this.savedPets).extracting(Pet::getName).containsExactlyInAnyOrder("Leo", "Max");
+        assertThat(this.savedPets.get(0).getType().getId()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRejectPetNamesSpanningLines() throws Exception {
+        String owner = "{\"first_name\":\"George\",\"last_name\":\"Franklin\",\"address\":\"110 W. Liberty St.\","
+                + "\"city\":\"Madison\",\"telephone\":\"6085551023\",\"pets\":[{\"name\":\"%s\","
+                + "\"birth_date\":\"2010-09-07\",\"type\":\"dog\"}]}\n";
+        String ndjson = String.format(owner, "Leo\\nMax") + String.format(owner, "Leo");
+        OwnerImporter.Result result = this.importer.importOwners(OwnerExportFormat.NDJSON
+                .openReader(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8))));
+
+        assertThat(result.getOwners()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(1);
+        assertThat(result.getErrors()).containsExactly("record 1: pet.name must be a single line");
+        assertThat(this.savedPets).extracting(Pet::getName).containsExactly("Leo");
+    }
+
+    @Test
+    void shouldReadWhatTheExportWrites() throws Exception {
+        for (OwnerExportFormat format : OwnerExportFormat.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (OwnerExportFormat.OwnerWriter writer = format.openWriter(out)) {
+                writer.accept(exportedOwner(1, "Leo"));
+                writer.accept(exportedOwner(2, "Basil"));
+            }
+            this.savedOwners.clear();
+            OwnerImporter.Result result = this.importer
+                    .importOwners(format.openReader(new ByteArrayInputStream(out.toByteArray())));
+            assertThat(result.getOwners()).as(format.getName()).isEqualTo(2);
+            assertThat(result.getRejected()).as(format.getName()).isZero();
+            assertThat(this.savedOwners.get(0)).extracting(Owner::getId).containsOnlyNulls();
+            assertThat(this.savedOwners.get(0).get(1).getPets().get(0).getName()).isEqualTo("Basil");
+            assertThat(this.savedOwners.get(0).get(0).getPets().get(0).getBirthDate())
+                    .isEqualTo(LocalDate.of(2010, 9, 7));
+        }
+    }
+
+    private Owner exportedOwner(int id, String petName) {
+        Owner owner = new Owner();
+        owner.setId(id);
+        owner.setFirstName("George");
+        owner.setLastName("Franklin");
+        owner.setAddress("110 W. Liberty St.");
+        owner.setCity("Madison");
+        owner.setTelephone("6085551023");
+        Pet pet = new Pet();
+        pet.setId(id);
+        pet.setName(petName);
+        pet.setBirthDate(LocalDate.of(2010, 9, 7));
+        PetType dog = new PetType();
+        dog.setId(2);
+        dog.setName("dog");
+        pet.setType(dog);
+        owner.addPet(pet);
+        return owner;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link OwnerNameIndex}
+ */
+class OwnerNameIndexTests {
+
+    private OwnerNameIndex index;
+
+    @BeforeEach
+    void setup() {
+        Map<Integer, String> lastNames = new HashMap<>();
+        lastNames.put(1, "Franklin");
+        lastNames.put(2, "Davis");
+        lastNames.put(4, "Davis");
+        lastNames.put(5, "McTavish");
+        lastNames.put(6, "Coleman");
+        this.index = new OwnerNameIndex();
+        this.index.rebuild(lastNames);
+    }
+
+    @Test
+    void shouldFindIdsByPrefixIgnoringCase() {
+        assertThat(this.index.findIds("Dav")).containsExactly(2, 4);
+        assertThat(this.index.findIds("dAVIS")).containsExactly(2, 4);
+        assertThat(this.index.findIds("Daviss")).isEmpty();
+        assertThat(this.index.findIds("")).hasSize(5);
+    }
+
+    @Test
+    void shouldSuggestDistinctNamesInOrder() {
+        assertThat(this.index.suggest("", 10)).containsExactly("Coleman", "Davis", "Franklin",
+                "McTavish");
+        assertThat(this.index.suggest("", 2)).containsExactly("Coleman", "Davis");
+    }
+
+    @Test
+    void shouldReflectRenamesAndInserts() {
+        this.index.put(1, "Dawson");
+        this.index.put(11, "Davies");
+        this.index.put(3, "davis");
+        assertThat(this.index.findIds("Da")).containsExactly(11, 2, 3, 4, 1);
+        assertThat(this.index.findIds("Franklin")).isEmpty();
+        assertThat(this.index.suggest("", 10)).containsExactly("Coleman", "Davies", "Davis",
+                "Dawson", "McTavish");
+        assertThat(this.index.size()).isEqualTo(7);
+
+        this.index.remove(11);
+        assertThat(this.index.findIds("Davies")).isEmpty();
+        assertThat(this.index.suggest("Dav", 10)).containsExactly("Davis");
+    }
+
+    @Test
+    void shouldCompactManyWrites() {
+        for (int id = 100; id < 3100; id++) {
+            this.index.put(id, "Owner" + (id % 7));
+        }
+        this.index.put(2, "Renamed");
+        assertThat(this.index.size()).isEqualTo(3005);
+        assertThat(this.index.findIds("owner3")).hasSize(3000 / 7 + 1);
+        assertThat(this.index.findIds("Davis")).containsExactly(4);
+    }
+
+    @Test
+    void shouldCompactManyRemoves() {
+        Map<Integer, String> lastNames = new HashMap<>();
+        for (int id = 100; id < 3100; id++) {
+            lastNames.put(id, "Owner" + (id % 7));
+        }
+        this.index.rebuild(lastNames);
+        for (int id = 100; id < 3100; id++) {
+            this.index.remove(id);
+        }
+        assertThat(this.index.getShadowedCount()).isLessThanOrEqualTo(1024);
+        assertThat(this.index.size()).isZero();
+        assertThat(this.index.findIds("")).isEmpty();
+    }
+
+    @Test
+    void shouldKeepWritesMadeDuringRebuild() {
+        this.index.put(20, "Zimmer");
+        Map<Integer, String> lastNames = new HashMap<>();
+        lastNames.put(2, "Davis");
+        this.index.rebuild(() -> {
+            // written after the owners table was read
+            this.index.put(9, "Davenport");
+            this.index.remove(2);
+            return lastNames;
+        });
+        assertThat(this.index.findIds("Dav")).containsExactly(9);
+        assertThat(this.index.findIds("Zimmer")).isEmpty();
+        assertThat(this.index.size()).isEqualTo(1);
+    }
+
+}
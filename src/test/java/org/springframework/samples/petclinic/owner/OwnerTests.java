@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the pet name lookups of {@link Owner}
+ */
+class OwnerTests {
+
+    @Test
+    void shouldFindPetByNameIgnoringCase() {
+        Owner owner = new Owner();
+        Pet leo = pet(1, "Leo");
+        owner.addPet(leo);
+        owner.addPet(pet(2, "Basil"));
+        assertThat(owner.getPet("leo")).isSameAs(leo);
+        assertThat(owner.getPet("LEO", true)).isSameAs(leo);
+        assertThat(owner.getPet("Le")).isNull();
+        assertThat(owner.getPet(null)).isNull();
+    }
+
+    @Test
+    void shouldIgnoreNewPetsWhenAsked() {
+        Owner owner = new Owner();
+        Pet unsaved = pet(null, "Leo");
+        owner.addPet(unsaved);
+        assertThat(owner.getPet("leo", true)).isNull();
+        assertThat(owner.getPet("leo", false)).isSameAs(unsaved);
+
+        Pet saved = pet(1, "LEO");
+        owner.addPet(saved);
+        assertThat(owner.getPet("leo", true)).isSameAs(saved);
+    }
+
+    @Test
+    void shouldFollowRenamedPets() {
+        Owner owner = new Owner();
+        Pet pet = new Pet();
+        owner.addPet(pet);
+        pet.setId(1);
+        pet.setName("Leo");
+        assertThat(owner.getPet("leo")).isSameAs(pet);
+        pet.setName("Max");
+        assertThat(owner.getPet("leo")).isNull();
+        assertThat(owner.getPet("max")).isSameAs(pet);
+    }
+
+    @Test
+    void shouldIndexPetsSetInBulk() {
+        Owner owner = new Owner();
+        Pet leo = pet(1, "Leo");
+        owner.setPetsInternal(Collections.singleton(leo));
+        assertThat(owner.getPet("LEO")).isSameAs(leo);
+    }
+
+    @Test
+    void shouldKeepSortedPetsInStepWithChanges() {
+        Owner owner = new Owner();
+        owner.addPet(pet(1, "max"));
+        owner.addPet(pet(2, "Leo"));
+        List<Pet> pets = owner.getPets();
+        assertThat(pets).extracting(Pet::getName).containsExactly("Leo", "max");
+        assertThat(owner.getPets()).isSameAs(pets);
+
+        Pet basil = pet(3, "Basil");
+        owner.addPet(basil);
+        assertThat(owner.getPets()).extracting(Pet::getName).containsExactly("Basil", "Leo", "max");
+        basil.setName("Zak");
+        assertThat(owner.getPets()).extracting(Pet::getName).containsExactly("Leo", "max", "Zak");
+    }
+
+    private static Pet pet(Integer id, String name) {
+        Pet pet = new Pet();
+        pet.setId(id);
+        pet.setName(name);
+        return pet;
+    }
+
+}
@@ -9,9 +9,16 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
@@ -38,12 +45,17 @@ class PetControllerTests {
     @MockBean
     private OwnerRepository owners;
 
+    @MockBean
+    private ReferenceDataRegistry referenceData;
+
     @BeforeEach
     public void setup() {
         PetType cat = new PetType();
         cat.setId(3);
         cat.setName("hamster");
         given(this.pets.findPetTypes()).willReturn(Lists.newArrayList(cat));
+        given(this.referenceData.getPetTypes())
+                .willReturn(NamedEntityIndex.of(Lists.newArrayList(cat)));
         given(this.owners.findById(TEST_OWNER_ID)).willReturn(new Owner());
         given(this.pets.findById(TEST_PET_ID)).willReturn(new Pet());
 
@@ -78,6 +90,34 @@ class PetControllerTests {
                 .andExpect(view().name("pets/createOrUpdatePetForm"));
     }
 
+    @Test
+    public void testProcessCreationFormDuplicateName() throws Exception {
+        Owner owner = new Owner();
+        Pet betty = new Pet();
+        betty.setId(5);
+        betty.setName("Betty");
+        owner.addPet(betty);
+        given(this.owners.findById(TEST_OWNER_ID)).willReturn(owner);
+        mockMvc.perform(
+                post("/owners/{ownerId}/pets/new", TEST_OWNER_ID).param("name", "BETTY")
+                        .param("type", "hamster").param("birthDate", "2015-02-12"))
+                .andExpect(model().attributeHasFieldErrorCode("pet", "name", "duplicate"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("pets/createOrUpdatePetForm"));
+        then(this.pets).should(never()).save(any(Pet.class));
+    }
+
+    @Test
+    public void testProcessCreationFormConcurrentDuplicateName() throws Exception {
+        willThrow(new DuplicateKeyException("uk_pets_owner_name")).given(this.pets).save(any(Pet.class));
+        mockMvc.perform(
+                post("/owners/{ownerId}/pets/new", TEST_OWNER_ID).param("name", "Betty")
+                        .param("type", "hamster").param("birthDate", "2015-02-12"))
+                .andExpect(model().attributeHasFieldErrorCode("pet", "name", "duplicate"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("pets/createOrUpdatePetForm"));
+    }
+
     @Test
     public void testInitUpdateForm() throws Exception {
         mockMvc.perform(
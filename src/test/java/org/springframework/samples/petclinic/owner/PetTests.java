@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.samples.petclinic.visit.Visit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the visit history of {@link Pet}
+ */
+class PetTests {
+
+    @Test
+    void shouldKeepVisitsNewestFirst() {
+        Pet pet = new Pet();
+        pet.setId(1);
+        pet.addVisit(visit("rabies shot", LocalDate.of(2013, 1, 1)));
+        pet.addVisit(visit("spayed", LocalDate.of(2013, 1, 4)));
+        pet.addVisit(visit("neutered", LocalDate.of(2013, 1, 3)));
+        pet.addVisit(visit("check-up", LocalDate.of(2013, 1, 4)));
+        pet.addVisit(visit("undated", null));
+        assertThat(pet.getVisits()).extracting(Visit::getDescription).containsExactly("undated", "spayed",
+                "check-up", "neutered", "rabies shot");
+        assertThat(pet.getVisits()).extracting(Visit::getPetId).containsOnly(1);
+    }
+
+    @Test
+    void shouldKeepVisitsReadNewestFirstInOrder() {
+        Pet pet = new Pet();
+        pet.addVisit(visit("spayed", LocalDate.of(2013, 1, 4)));
+        pet.addVisit(visit("check-up", LocalDate.of(2013, 1, 4)));
+        pet.addVisit(visit("neutered", LocalDate.of(2013, 1, 3)));
+        pet.addVisit(visit("rabies shot", LocalDate.of(2013, 1, 1)));
+        pet.addVisit(visit("follow-up", LocalDate.of(2013, 1, 2)));
+        assertThat(pet.getVisits()).extracting(Visit::getDescription).containsExactly("spayed", "check-up",
+                "neutered", "follow-up", "rabies shot");
+    }
+
+    @Test
+    void shouldSortVisitsSetInBulk() {
+        Pet pet = new Pet();
+        pet.setVisitsInternal(Arrays.asList(visit("rabies shot", LocalDate.of(2013, 1, 1)),
+                visit("spayed", LocalDate.of(2013, 1, 4))));
+        assertThat(pet.getVisits()).extracting(Visit::getDescription).containsExactly("spayed", "rabies shot");
+    }
+
+    private static Visit visit(String description, LocalDate date) {
+        Visit visit = new Visit();
+        visit.setDescription(description);
+        visit.setDate(date);
+        return visit;
+    }
+
+}
@@ -29,6 +29,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
 
@@ -41,13 +44,13 @@ import static org.mockito.BDDMockito.given;
 class PetTypeFormatterTests {
 
     @Mock
-    private PetRepository pets;
+    private ReferenceDataRegistry referenceData;
 
     private PetTypeFormatter petTypeFormatter;
 
     @BeforeEach
     void setup() {
-        this.petTypeFormatter = new PetTypeFormatter(pets);
+        this.petTypeFormatter = new PetTypeFormatter(referenceData);
     }
 
     @Test
@@ -60,14 +63,14 @@ class PetTypeFormatterTests {
 
     @Test
     void shouldParse() throws ParseException {
-        given(this.pets.findPetTypes()).willReturn(makePetTypes());
+        given(this.referenceData.getPetTypes()).willReturn(NamedEntityIndex.of(makePetTypes()));
         PetType petType = petTypeFormatter.parse("Bird", Locale.ENGLISH);
         assertThat(petType.getName()).isEqualTo("Bird");
     }
 
     @Test
     void shouldThrowParseException() throws ParseException {
-        given(this.pets.findPetTypes()).willReturn(makePetTypes());
+        given(this.referenceData.getPetTypes()).willReturn(NamedEntityIndex.of(makePetTypes()));
         Assertions.assertThrows(ParseException.class, () -> {
             petTypeFormatter.parse("Fish", Locale.ENGLISH);
         });
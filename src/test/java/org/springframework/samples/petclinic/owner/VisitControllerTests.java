@@ -22,10 +22,16 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.samples.petclinic.visit.Visit;
 import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
@@ -40,6 +46,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @WebMvcTest(VisitController.class)
 class VisitControllerTests {
 
+    private static final int TEST_OWNER_ID = 1;
+
     private static final int TEST_PET_ID = 1;
 
     @Autowired
@@ -54,6 +62,7 @@ class VisitControllerTests {
     @BeforeEach
     void init() {
         given(this.pets.findById(TEST_PET_ID)).willReturn(new Pet());
+        given(this.pets.existsByIdAndOwnerId(TEST_PET_ID, TEST_OWNER_ID)).willReturn(true);
     }
 
     @Test
@@ -69,6 +78,9 @@ class VisitControllerTests {
                 .param("name", "George").param("description", "Visit Description"))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(view().name("redirect:/owners/{ownerId}"));
+        then(this.visits).should().save(argThat(visit -> visit.getPetId() == TEST_PET_ID
+                && "Visit Description".equals(visit.getDescription())));
+        then(this.pets).should(never()).findById(anyInt());
     }
 
     @Test
@@ -77,6 +89,7 @@ class VisitControllerTests {
                 .param("name", "George")).andExpect(model().attributeHasErrors("visit"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("pets/createOrUpdateVisitForm"));
+        then(this.visits).should(never()).save(any(Visit.class));
     }
 
 }
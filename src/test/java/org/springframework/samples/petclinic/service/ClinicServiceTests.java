@@ -17,28 +17,51 @@
 package org.springframework.samples.petclinic.service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.samples.petclinic.model.EntityUtils;
+import org.springframework.samples.petclinic.owner.JdbcOwnerRepositoryImpl;
 import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.OwnerCache;
+import org.springframework.samples.petclinic.owner.OwnerFetchExecutor;
+import org.springframework.samples.petclinic.owner.OwnerFetchPlan;
+import org.springframework.samples.petclinic.owner.OwnerPage;
 import org.springframework.samples.petclinic.owner.OwnerRepository;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.PetRepository;
 import org.springframework.samples.petclinic.owner.PetType;
+import org.springframework.samples.petclinic.vet.CachingVetRepository;
+import org.springframework.samples.petclinic.vet.Specialty;
 import org.springframework.samples.petclinic.vet.Vet;
 import org.springframework.samples.petclinic.vet.VetRepository;
 import org.springframework.samples.petclinic.visit.Visit;
 import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Integration test of the Service and the Repository layer.
@@ -86,6 +109,12 @@ public class ClinicServiceTests {
     @Autowired
     protected VetRepository vets;
 
+    @Autowired
+    protected OwnerCache ownerCache;
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
     @Test
     public void shouldFindOwnersByLastName() {
         Collection<Owner> owners = this.owners.findByLastName("Davis");
@@ -95,6 +124,170 @@ public class ClinicServiceTests {
         assertThat(owners.isEmpty()).isTrue();
     }
 
+    @Test
+    public void shouldPageOwnersByLastName() {
+        OwnerPage first = this.owners.findByLastName("", null, 3, true);
+        assertThat(first.getContent()).hasSize(3);
+        assertThat(first.getTotal()).isEqualTo(10L);
+        assertThat(first.getContent().get(0).getLastName()).isEqualTo("Black");
+        assertThat(first.hasNext()).isTrue();
+
+        // the two Davis owners straddle the page boundary and are told apart by id
+        OwnerPage second = this.owners.findByLastName("", first.getNext(), 3, false);
+        assertThat(first.getContent().get(2).getId()).isEqualTo(2);
+        assertThat(second.getContent().get(0).getId()).isEqualTo(4);
+        assertThat(second.getTotal()).isNull();
+
+        OwnerPage third = this.owners.findByLastName("", second.getNext(), 3, false);
+        OwnerPage fourth = this.owners.findByLastName("", third.getNext(), 3, false);
+        assertThat(fourth.getContent()).hasSize(1);
+        assertThat(fourth.getContent().get(0).getLastName()).isEqualTo("Schroeder");
+        assertThat(fourth.getContent().get(0).getPets()).isNotEmpty();
+        assertThat(fourth.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldLoadSamePetsAndVisitsForOwnersByLastName() {
+        Collection<Owner> owners = this.owners.findByLastName("");
+        assertThat(owners.size()).isEqualTo(10);
+        for (Owner owner : owners) {
+            Owner single = this.owners.findById(owner.getId());
+            assertThat(owner.getPets()).hasSameSizeAs(single.getPets());
+            for (int i = 0; i < owner.getPets().size(); i++) {
+                Pet pet = owner.getPets().get(i);
+                Pet expected = single.getPets().get(i);
+                assertThat(pet.getId()).isEqualTo(expected.getId());
+                assertThat(pet.getOwner()).isSameAs(owner);
+                assertThat(pet.getType().getName()).isEqualTo(expected.getType().getName());
+                assertThat(pet.getVisits()).hasSameSizeAs(expected.getVisits());
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchLastNamePrefixIgnoringCaseInSummariesAndOwners() {
+        for (OwnerFetchPlan plan : OwnerFetchPlan.values()) {
+            OwnerPage page = this.owners.findByLastName("davis", null, 10, true, plan);
+            assertThat(page.getTotal()).isEqualTo(2L);
+            assertThat(page.getContent()).extracting(Owner::getLastName).containsOnly("Davis");
+            assertThat(this.owners.findByLastName("_avis", null, 10, true, plan).getTotal()).isZero();
+        }
+        assertThat(this.owners.findByLastName("davis")).extracting(Owner::getLastName).containsOnly("Davis");
+        assertThat(this.owners.findByLastName("_avis")).isEmpty();
+    }
+
+    @Test
+    public void shouldFindOwnersByLastNameInPageOrder() {
+        List<Integer> pagedIds = new ArrayList<>();
+        OwnerPage.Cursor after = null;
+        do {
+            OwnerPage page = this.owners.findByLastName("", after, 4, false, OwnerFetchPlan.SUMMARY);
+            page.getContent().forEach(owner -> pagedIds.add(owner.getId()));
+            after = page.getNext();
+        }
+        while (after != null);
+        assertThat(this.owners.findByLastName("")).extracting(Owner::getId).containsExactlyElementsOf(pagedIds);
+    }
+
+    @Test
+    public void shouldPageOwnerSummariesLikeOwners() {
+        OwnerPage.Cursor after = null;
+        OwnerPage.Cursor summaryAfter = null;
+        do {
+            OwnerPage page = this.owners.findByLastName("", after, 4, after == null);
+            OwnerPage summaries = this.owners.findByLastName("", summaryAfter, 4, summaryAfter == null,
+                    OwnerFetchPlan.SUMMARY);
+            assertThat(summaries.getTotal()).isEqualTo(page.getTotal());
+            assertThat(summaries.getContent()).hasSameSizeAs(page.getContent());
+            for (int i = 0; i < page.getContent().size(); i++) {
+                Owner owner = page.getContent().get(i);
+                Owner summary = summaries.getContent().get(i);
+                assertThat(summary.getId()).isEqualTo(owner.getId());
+                assertThat(summary.getAddress()).isEqualTo(owner.getAddress());
+                assertThat(summary.getPets()).extracting(Pet::getName)
+                        .containsExactlyElementsOf(owner.getPets().stream().map(Pet::getName)::iterator);
+            }
+            after = page.getNext();
+            summaryAfter = summaries.getNext();
+        }
+        while (after != null);
+        assertThat(summaryAfter).isNull();
+    }
+
+    @Test
+    @Transactional
+    public void shouldKeepOwnerSummaryInStepWithSaves() {
+        Owner owner = this.owners.findById(6);
+        owner.setLastName("Colemann");
+        this.owners.save(owner);
+        Pet pet = new Pet();
+        pet.setName("Tiddles");
+        pet.setType(EntityUtils.getById(this.pets.findPetTypes(), PetType.class, 1));
+        pet.setBirthDate(LocalDate.now());
+        owner.addPet(pet);
+        this.pets.save(pet);
+
+        OwnerPage page = this.owners.findByLastName("Colemann", null, 10, true, OwnerFetchPlan.SUMMARY);
+        assertThat(page.getTotal()).isEqualTo(1L);
+        assertThat(page.getContent().get(0).getPets()).extracting(Pet::getName)
+                .containsExactly("Max", "Samantha", "Tiddles");
+    }
+
+    @Test
+    public void shouldRebuildOwnerSummariesWithPetCounts() {
+        this.jdbcTemplate.update("UPDATE owner_summary SET pet_count = 0, pet_names = ''");
+        ((JdbcOwnerRepositoryImpl) this.owners).rebuildSummaries();
+
+        assertThat(this.jdbcTemplate.queryForObject("SELECT pet_count FROM owner_summary WHERE owner_id = 6",
+                Integer.class)).isEqualTo(2);
+        OwnerPage page = this.owners.findByLastName("Coleman", null, 10, true, OwnerFetchPlan.SUMMARY);
+        assertThat(page.getContent().get(0).getPets()).extracting(Pet::getName).containsExactly("Max",
+                "Samantha");
+    }
+
+    @Test
+    @Transactional
+    public void shouldLoadVisitsOnDemandWithPetsOnlyFetchPlan() {
+        OwnerPage page = this.owners.findByLastName("", null, 10, false, OwnerFetchPlan.PETS);
+        assertThat(page.getContent()).hasSize(10);
+
+        // saved after the search, yet seen because visits are only read on first access
+        Visit visit = new Visit();
+        visit.setPetId(7);
+        visit.setDescription("rabies shot");
+        this.visits.save(visit);
+
+        int visits = 0;
+        for (Owner owner : page.getContent()) {
+            for (Pet pet : owner.getPets()) {
+                assertThat(pet.getType()).isNotNull();
+                visits += pet.getVisits().size();
+                if (pet.getId() == 7) {
+                    assertThat(pet.getVisits()).extracting(Visit::getDescription).contains("rabies shot");
+                }
+            }
+        }
+        assertThat(visits).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldExportAllOwnersWithPetsAndVisits() {
+        List<Owner> exported = new ArrayList<>();
+        this.owners.exportAll(2, exported::add);
+        assertThat(exported).extracting(Owner::getId).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        int pets = 0;
+        int visits = 0;
+        for (Owner owner : exported) {
+            pets += owner.getPets().size();
+            for (Pet pet : owner.getPets()) {
+                assertThat(pet.getType()).isNotNull();
+                visits += pet.getVisits().size();
+            }
+        }
+        assertThat(pets).isEqualTo(13);
+        assertThat(visits).isEqualTo(4);
+    }
+
     @Test
     public void shouldFindSingleOwnerWithPet() {
         Owner owner = this.owners.findById(1);
@@ -123,6 +316,37 @@ public class ClinicServiceTests {
         assertThat(owners.size()).isEqualTo(found + 1);
     }
 
+    @Test
+    @Transactional
+    public void shouldBatchInsertOwnersAndPets() {
+        List<Owner> newOwners = new ArrayList<>();
+        List<Pet> newPets = new ArrayList<>();
+        PetType type = EntityUtils.getById(this.pets.findPetTypes(), PetType.class, 2);
+        for (int i = 0; i < 5; i++) {
+            Owner owner = new Owner();
+            owner.setFirstName("Sam" + i);
+            owner.setLastName("Batchelor");
+            owner.setAddress("4, Evans Street");
+            owner.setCity("Wollongong");
+            owner.setTelephone("4444444444");
+            Pet pet = new Pet();
+            pet.setName("bowser" + i);
+            pet.setType(type);
+            pet.setBirthDate(LocalDate.now());
+            owner.addPet(pet);
+            newOwners.add(owner);
+            newPets.add(pet);
+        }
+        this.owners.saveAll(newOwners, 2);
+        this.pets.saveAll(newPets, 2);
+
+        assertThat(newOwners).extracting(Owner::getId).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(this.owners.findByLastName("Batchelor")).hasSize(5);
+        Owner owner = this.owners.findById(newOwners.get(3).getId());
+        assertThat(owner.getFirstName()).isEqualTo("Sam3");
+        assertThat(owner.getPets()).extracting(Pet::getName).containsExactly("bowser3");
+    }
+
     @Test
     @Transactional
     public void shouldUpdateOwner() {
@@ -146,6 +370,63 @@ public class ClinicServiceTests {
 
     }
 
+    @Test
+    public void shouldFindPetWithVisitsAndOwnerInOneLookup() {
+        Pet pet7 = this.pets.findById(7);
+        assertThat(pet7.getType().getName()).isEqualTo("cat");
+        assertThat(pet7.getVisits()).hasSize(2);
+        assertThat(pet7.getVisits()).extracting(Visit::getPetId).containsOnly(7);
+        assertThat(pet7.getOwner().getId()).isEqualTo(6);
+        assertThat(pet7.getOwner().getLastName()).isEqualTo("Coleman");
+
+        Pet pet1 = this.pets.findById(1);
+        assertThat(pet1.getVisits()).isEmpty();
+        assertThatThrownBy(() -> this.pets.findById(-1)).isInstanceOf(DataRetrievalFailureException.class);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void shouldFindPetWithOwnerReferenceWhetherOwnerIsCachedOrNot() {
+        this.ownerCache.evict(6);
+        Pet loaded = this.pets.findById(7);
+        this.owners.findById(6);
+        long hits = this.ownerCache.getHitCount();
+        Pet cached = this.pets.findById(7);
+        assertThat(this.ownerCache.getHitCount()).isEqualTo(hits + 1);
+
+        for (Pet pet7 : new Pet[] { loaded, cached }) {
+            assertThat(pet7.getOwner().getId()).isEqualTo(6);
+            assertThat(pet7.getOwner().getLastName()).isEqualTo("Coleman");
+            assertThat(pet7.getOwner().getPets()).containsExactly(pet7);
+            assertThat(pet7.getVisits()).hasSize(2);
+        }
+    }
+
+    @Test
+    @Transactional
+    public void shouldRejectDuplicatePetNameForSameOwner() {
+        Owner owner6 = this.owners.findById(6);
+        Pet pet = new Pet();
+        pet.setName("samantha");
+        pet.setType(EntityUtils.getById(this.pets.findPetTypes(), PetType.class, 1));
+        pet.setBirthDate(LocalDate.now());
+        owner6.addPet(pet);
+        assertThatThrownBy(() -> this.pets.save(pet)).isInstanceOf(DuplicateKeyException.class);
+
+        // the same name is fine for another owner
+        Owner owner1 = this.owners.findById(1);
+        owner1.addPet(pet);
+        this.pets.save(pet);
+        assertThat(pet.getId()).isNotNull();
+    }
+
+    @Test
+    public void shouldCheckPetBelongsToOwner() {
+        assertThat(this.pets.existsByIdAndOwnerId(7, 6)).isTrue();
+        assertThat(this.pets.existsByIdAndOwnerId(7, 1)).isFalse();
+        assertThat(this.pets.existsByIdAndOwnerId(-1, 6)).isFalse();
+    }
+
     @Test
     public void shouldFindAllPetTypes() {
         Collection<PetType> petTypes = this.pets.findPetTypes();
@@ -179,6 +460,45 @@ public class ClinicServiceTests {
         assertThat(pet.getId()).isNotNull();
     }
 
+    /**
+     * Runs outside a transaction, so that each save commits on its own.
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void shouldKeepSummaryOfConcurrentPetSaves() throws Exception {
+        Owner owner1 = this.owners.findById(1);
+        PetType type = EntityUtils.getById(this.pets.findPetTypes(), PetType.class, 2);
+        List<Pet> twins = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Pet pet = new Pet();
+            pet.setName("Twin " + i);
+            pet.setType(type);
+            pet.setBirthDate(LocalDate.now());
+            owner1.addPet(pet);
+            twins.add(pet);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> saves = new ArrayList<>();
+            for (Pet pet : twins) {
+                saves.add(executor.submit(() -> this.pets.save(pet)));
+            }
+            for (Future<?> save : saves) {
+                save.get();
+            }
+            Owner summary = this.owners.findByLastName("Franklin", null, 1, false, OwnerFetchPlan.SUMMARY)
+                    .getContent().get(0);
+            assertThat(summary.getPets()).extracting(Pet::getName).contains("Leo", "Twin 0", "Twin 7")
+                    .hasSize(9);
+        }
+        finally {
+            executor.shutdownNow();
+            this.jdbcTemplate.update("DELETE FROM pets WHERE name LIKE 'Twin %'");
+            this.ownerCache.evict(1);
+            this.owners.save(this.owners.findById(1));
+        }
+    }
+
     @Test
     @Transactional
     public void shouldUpdatePetName() throws Exception {
@@ -204,6 +524,35 @@ public class ClinicServiceTests {
         assertThat(vet.getSpecialties().get(1).getName()).isEqualTo("surgery");
     }
 
+    @Test
+    public void shouldFindVetsWithAndWithoutSpecialtiesInOrder() {
+        Collection<Vet> vets = this.vets.findAll();
+
+        assertThat(vets).extracting(Vet::getLastName).containsExactly("Carter", "Douglas", "Jenkins", "Leary",
+                "Ortega", "Stevens");
+        assertThat(vets).extracting(Vet::getNrOfSpecialties).containsExactly(0, 2, 0, 1, 1, 1);
+        assertThat(EntityUtils.getById(vets, Vet.class, 5).getSpecialties().get(0).getName())
+                .isEqualTo("radiology");
+    }
+
+    @Test
+    public void shouldFindVetsBySpecialties() {
+        Vet douglas = EntityUtils.getById(this.vets.findAll(), Vet.class, 3);
+        Specialty surgery = EntityUtils.getById(douglas.getSpecialties(), Specialty.class, 2);
+        Specialty dentistry = EntityUtils.getById(douglas.getSpecialties(), Specialty.class, 3);
+
+        assertThat(this.vets.findBySpecialties(Collections.singletonList(surgery))).extracting(Vet::getLastName)
+                .containsExactly("Douglas", "Ortega");
+        assertThat(this.vets.findBySpecialties(Arrays.asList(surgery, dentistry))).containsExactly(douglas);
+        assertThat(this.vets.findBySpecialties(Collections.emptyList())).hasSize(6);
+    }
+
+    @Test
+    public void shouldServeVetsFromCache() {
+        assertThat(this.vets).isInstanceOf(CachingVetRepository.class);
+        assertThat(this.vets.findAll()).isSameAs(this.vets.findAll());
+    }
+
     @Test
     @Transactional
     public void shouldAddNewVisitForPet() {
@@ -229,9 +578,114 @@ public class ClinicServiceTests {
         assertThat(visitArr[0].getPetId()).isEqualTo(7);
     }
 
+    @Test
+    public void shouldLoadPetVisitsNewestFirst() {
+        Pet pet8 = this.pets.findById(8);
+        assertThat(pet8.getVisits()).extracting(Visit::getDescription).containsExactly("neutered",
+                "rabies shot");
+        assertThat(this.owners.findById(6).getPet("Max").getVisits()).extracting(Visit::getDescription)
+                .containsExactly("neutered", "rabies shot");
+    }
+
+    /**
+     * Runs outside a transaction with <code>petclinic.owner-fetch.parallel</code>
+     * set, where the owner cache is used and the count of a page is read
+     * concurrently with the page.
+     */
+    @Nested
+    @ContextConfiguration(classes = TestClinicConfiguration.class)
+    @TestPropertySource(properties = "petclinic.owner-fetch.parallel=true")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    class ParallelOwnerFetch {
+
+        @Autowired
+        private OwnerRepository owners;
+
+        @Autowired
+        private OwnerCache ownerCache;
+
+        @Autowired
+        private OwnerFetchExecutor fetchExecutor;
+
+        @Autowired
+        private JdbcTemplate jdbcTemplate;
+
+        @Test
+        public void shouldFindOwnerWithPetsWithoutVisits() {
+            assertThat(this.fetchExecutor.isParallel()).isTrue();
+            this.jdbcTemplate.update("INSERT INTO pets VALUES (1000, 'Nemo', '2020-01-01', 1, 6)");
+            this.ownerCache.evict(6);
+            try {
+                Owner owner = this.owners.findById(6);
+                assertThat(owner.getPets()).extracting(Pet::getName).containsExactly("Max", "Nemo", "Samantha");
+                assertThat(owner.getPet("Nemo").getVisits()).isEmpty();
+                assertThat(owner.getPet("Samantha").getVisits()).hasSize(2);
+                assertThat(this.owners.findById(3).getPets()).extracting(Pet::getVisits).allMatch(List::isEmpty);
+                OwnerPage page = this.owners.findByLastName("Davis", null, 1, true, OwnerFetchPlan.SUMMARY);
+                assertThat(page.getContent()).hasSize(1);
+                assertThat(page.getTotal()).isEqualTo(2L);
+            }
+            finally {
+                this.jdbcTemplate.update("DELETE FROM pets WHERE id = 1000");
+                this.ownerCache.evict(6);
+            }
+        }
+
+        @Test
+        public void shouldCountWhileReadingPageAfterCursor() {
+            OwnerPage.Cursor after = new OwnerPage.Cursor("Davis", 2);
+            for (int i = 0; i < 200; i++) {
+                for (OwnerFetchPlan plan : OwnerFetchPlan.values()) {
+                    OwnerPage page = this.owners.findByLastName("Davis", after, 10, true, plan);
+                    assertThat(page.getTotal()).isEqualTo(2L);
+                    assertThat(page.getContent()).extracting(Owner::getId).containsExactly(4);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Runs outside a transaction with the name index refreshed every millisecond,
+     * as if other nodes were writing owners.
+     */
+    @Nested
+    @ContextConfiguration(classes = TestClinicConfiguration.class)
+    @TestPropertySource(properties = "petclinic.owner-name-index.refresh=1ms")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    class RefreshedNameIndex {
+
+        @Autowired
+        private OwnerRepository owners;
+
+        @Autowired
+        private JdbcTemplate jdbcTemplate;
+
+        @Test
+        public void shouldFindOwnerWrittenBehindTheIndexAfterRefresh() throws Exception {
+            assertThat(this.owners.findByLastName("Zylberstein")).isEmpty();
+            this.jdbcTemplate.update("INSERT INTO owners VALUES (1000, 'Ada', 'Zylberstein', '1 Main St.', "
+                    + "'Madison', '6085550000')");
+            try {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                Collection<Owner> found = this.owners.findByLastName("Zylberstein");
+                while (found.isEmpty() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                    found = this.owners.findByLastName("Zylberstein");
+                }
+                assertThat(found).extracting(Owner::getId).containsExactly(1000);
+            }
+            finally {
+                this.jdbcTemplate.update("DELETE FROM owners WHERE id = 1000");
+            }
+        }
+
+    }
+
     @Configuration
     @ComponentScan(basePackageClasses = { Owner.class, Vet.class,
             Visit.class }, basePackages = {
+                    "org.springframework.samples.petclinic.model",
                     "org.springframework.samples.petclinic.system" })
     public static class TestClinicConfiguration {
 
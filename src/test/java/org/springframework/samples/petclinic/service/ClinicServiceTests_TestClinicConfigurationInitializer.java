@@ -18,14 +18,26 @@ public class ClinicServiceTests_TestClinicConfigurationInitializer
                     .getBeanNamesForType(PetClinicApplication.class).length == 0) {
                 TypeService types = InfrastructureUtils.getBean(context.getBeanFactory(),
                         TypeService.class);
+                context.registerBean(types.getType(
+                        "org.springframework.samples.petclinic.model.JdbcIdAllocator"));
                 context.registerBean(types.getType(
                         "org.springframework.samples.petclinic.owner.JdbcOwnerRepositoryImpl"));
                 context.registerBean(types.getType(
                         "org.springframework.samples.petclinic.owner.JdbcPetRepositoryImpl"));
                 context.registerBean(types.getType(
                         "org.springframework.samples.petclinic.vet.JdbcVetRepositoryImpl"));
+                context.registerBean(types.getType(
+                        "org.springframework.samples.petclinic.vet.CachingVetRepository"));
                 context.registerBean(types.getType(
                         "org.springframework.samples.petclinic.visit.JdbcVisitRepositoryImpl"));
+                context.registerBean(types.getType(
+                        "org.springframework.samples.petclinic.visit.VisitWriteBehindQueue"));
+                context.registerBean(types.getType(
+                        "org.springframework.samples.petclinic.system.ReferenceDataRegistry"));
+                context.registerBean(types.getType(
+                        "org.springframework.samples.petclinic.owner.OwnerCache"));
+                context.registerBean(types.getType(
+                        "org.springframework.samples.petclinic.owner.OwnerFetchExecutor"));
             }
         }
     }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.vet;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link CachingVetRepository}
+ */
+class CachingVetRepositoryTests {
+
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    private long now;
+
+    private int loads;
+
+    private boolean failing;
+
+    private final VetRepository delegate = () -> {
+        if (this.failing) {
+            throw new DataAccessResourceFailureException("down");
+        }
+        this.loads++;
+        return Collections.singletonList(new Vet());
+    };
+
+    private final CachingVetRepository vets = new CachingVetRepository(this.delegate, Duration.ofSeconds(60),
+            Duration.ofSeconds(10), this.refreshes::add, () -> this.now);
+
+    @Test
+    void shouldLoadOnceWithinRefreshInterval() {
+        Collection<Vet> first = this.vets.findAll();
+        this.now = Duration.ofSeconds(9).toNanos();
+        assertThat(this.vets.findAll()).isSameAs(first);
+        assertThat(this.loads).isEqualTo(1);
+        assertThat(this.refreshes).isEmpty();
+    }
+
+    @Test
+    void shouldRefreshAheadWithoutBlocking() {
+        Collection<Vet> first = this.vets.findAll();
+        this.now = Duration.ofSeconds(10).toNanos();
+        assertThat(this.vets.findAll()).isSameAs(first);
+        assertThat(this.vets.findAll()).isSameAs(first);
+        assertThat(this.loads).isEqualTo(1);
+        assertThat(this.refreshes).hasSize(1);
+
+        this.refreshes.remove(0).run();
+        assertThat(this.loads).isEqualTo(2);
+        assertThat(this.vets.findAll()).isNotSameAs(first);
+        assertThat(this.refreshes).isEmpty();
+    }
+
+    @Test
+    void shouldKeepCachedVetsWhenRefreshFails() {
+        Collection<Vet> first = this.vets.findAll();
+        this.now = Duration.ofSeconds(10).toNanos();
+        this.vets.findAll();
+        this.failing = true;
+        this.refreshes.remove(0).run();
+        assertThat(this.vets.findAll()).isSameAs(first);
+        assertThat(this.refreshes).hasSize(1);
+    }
+
+    @Test
+    void shouldReloadExpiredVets() {
+        Collection<Vet> first = this.vets.findAll();
+        this.now = Duration.ofSeconds(60).toNanos();
+        assertThat(this.vets.findAll()).isNotSameAs(first);
+        assertThat(this.loads).isEqualTo(2);
+        assertThat(this.vets.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLoadColdCacheOnceForConcurrentMisses() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        VetRepository slow = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.singletonList(new Vet());
+        };
+        CachingVetRepository vets = new CachingVetRepository(slow, Duration.ofSeconds(60), Duration.ofSeconds(10),
+                this.refreshes::add, () -> this.now);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Collection<Vet>>> results = new ArrayList<>();
+            results.add(executor.submit(vets::findAll));
+            loading.await(10, TimeUnit.SECONDS);
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(vets::findAll));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<Collection<Vet>> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isSameAs(results.get(0).get());
+            }
+            assertThat(loads).hasValue(1);
+            assertThat(vets.getMissCount()).isEqualTo(4);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotCacheWithZeroTtl() {
+        CachingVetRepository uncached = new CachingVetRepository(this.delegate, Duration.ZERO,
+                Duration.ZERO, this.refreshes::add, () -> this.now);
+        uncached.findAll();
+        uncached.findAll();
+        assertThat(this.loads).isEqualTo(2);
+        assertThat(uncached.size()).isZero();
+    }
+
+    @Test
+    void shouldPublishCacheStatistics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        this.vets.bindTo(registry);
+        this.vets.findAll();
+        this.vets.findAll();
+        this.vets.findAll();
+        assertThat(registry.get("cache.gets").tag("cache", "vets").tag("result", "hit").functionCounter().count())
+                .isEqualTo(2);
+        assertThat(registry.get("cache.gets").tag("cache", "vets").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("cache.puts").tag("cache", "vets").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.size").tag("cache", "vets").gauge().value()).isEqualTo(1);
+    }
+
+}
@@ -16,6 +16,8 @@
 
 package org.springframework.samples.petclinic.vet;
 
+import java.util.Collections;
+
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,12 +26,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.model.NamedEntityIndex;
+import org.springframework.samples.petclinic.system.ReferenceDataRegistry;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -47,6 +56,9 @@ class VetControllerTests {
     @MockBean
     private VetRepository vets;
 
+    @MockBean
+    private ReferenceDataRegistry referenceData;
+
     @BeforeEach
     void setup() {
         Vet james = new Vet();
@@ -62,6 +74,10 @@ class VetControllerTests {
         radiology.setName("radiology");
         helen.addSpecialty(radiology);
         given(this.vets.findAll()).willReturn(Lists.newArrayList(james, helen));
+        given(this.vets.findBySpecialties(Collections.singletonList(radiology)))
+                .willReturn(Lists.newArrayList(helen));
+        given(this.referenceData.getSpecialties())
+                .willReturn(NamedEntityIndex.of(Collections.singletonList(radiology)));
     }
 
     @Test
@@ -80,4 +96,45 @@ class VetControllerTests {
                 .andExpect(jsonPath("$.vetList[0].id").value(1));
     }
 
+    @Test
+    void testNotModifiedVetListForMatchingETag() throws Exception {
+        String etag = mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(header().exists("ETag")).andReturn().getResponse()
+                .getHeader("ETag");
+        mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON).header("If-None-Match", etag))
+                .andExpect(status().isNotModified()).andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void testNewETagWhenVetsChange() throws Exception {
+        String etag = mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON)).andReturn()
+                .getResponse().getHeader("ETag");
+        Vet linda = new Vet();
+        linda.setFirstName("Linda");
+        linda.setLastName("Douglas");
+        linda.setId(3);
+        given(this.vets.findAll()).willReturn(Lists.newArrayList(linda));
+        mockMvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON).header("If-None-Match", etag))
+                .andExpect(status().isOk()).andExpect(header().string("ETag", not(etag)))
+                .andExpect(jsonPath("$.vetList[0].id").value(3));
+    }
+
+    @Test
+    void testFilterVetListBySpecialty() throws Exception {
+        mockMvc.perform(get("/vets").param("specialty", "radiology").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.vetList.length()").value(1))
+                .andExpect(jsonPath("$.vetList[0].id").value(2));
+        mockMvc.perform(get("/vets.html").param("specialty", "radiology, "))
+                .andExpect(status().isOk()).andExpect(model().attribute("vets",
+                        hasProperty("vetList", contains(hasProperty("id", is(2))))));
+    }
+
+    @Test
+    void testFilterVetListByUnknownSpecialty() throws Exception {
+        mockMvc.perform(get("/vets").param("specialty", "radiology,astrology").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$.vetList").isEmpty());
+    }
+
 }
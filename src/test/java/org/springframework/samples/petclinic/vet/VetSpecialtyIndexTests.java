@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.vet;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link VetSpecialtyIndex}
+ */
+class VetSpecialtyIndexTests {
+
+    private final Specialty radiology = specialty(1, "radiology");
+
+    private final Specialty surgery = specialty(2, "surgery");
+
+    private final Specialty dentistry = specialty(3, "dentistry");
+
+    private final Vet carter = vet(1, "Carter");
+
+    private final Vet douglas = vet(3, "Douglas", this.surgery, this.dentistry);
+
+    private final Vet leary = vet(2, "Leary", this.radiology);
+
+    private final Vet ortega = vet(4, "Ortega", this.surgery);
+
+    private final VetSpecialtyIndex index = VetSpecialtyIndex
+            .of(Arrays.asList(this.carter, this.douglas, this.leary, this.ortega));
+
+    @Test
+    void shouldFindVetsWithAllGivenSpecialtiesInOrder() {
+        assertThat(this.index.findBySpecialties(Collections.singletonList(this.surgery)))
+                .containsExactly(this.douglas, this.ortega);
+        assertThat(this.index.findBySpecialties(Arrays.asList(this.surgery, this.dentistry)))
+                .containsExactly(this.douglas);
+        assertThat(this.index.findBySpecialties(Arrays.asList(this.surgery, this.radiology))).isEmpty();
+    }
+
+    @Test
+    void shouldFindAllVetsWithoutSpecialties() {
+        assertThat(this.index.findBySpecialties(Collections.emptyList())).containsExactly(this.carter,
+                this.douglas, this.leary, this.ortega);
+    }
+
+    @Test
+    void shouldFindNoVetsForUnassignedSpecialty() {
+        assertThat(this.index.findBySpecialties(Collections.singletonList(specialty(4, "astrology")))).isEmpty();
+    }
+
+    @Test
+    void shouldNotChangeIndexWhenFiltering() {
+        this.index.findBySpecialties(Arrays.asList(this.surgery, this.dentistry));
+        assertThat(this.index.findBySpecialties(Collections.singletonList(this.surgery)))
+                .containsExactly(this.douglas, this.ortega);
+    }
+
+    private static Specialty specialty(int id, String name) {
+        Specialty specialty = new Specialty();
+        specialty.setId(id);
+        specialty.setName(name);
+        return specialty;
+    }
+
+    private static Vet vet(int id, String lastName, Specialty... specialties) {
+        Vet vet = new Vet();
+        vet.setId(id);
+        vet.setLastName(lastName);
+        for (Specialty specialty : specialties) {
+            vet.addSpecialty(specialty);
+        }
+        return vet;
+    }
+
+}
@@ -39,4 +39,27 @@ class VetTests {
         assertThat(other.getId()).isEqualTo(vet.getId());
     }
 
+    @Test
+    void testSortedSpecialtiesFollowAdditions() {
+        Vet vet = new Vet();
+        vet.addSpecialty(specialty(2, "surgery"));
+        vet.addSpecialty(specialty(1, "Radiology"));
+        assertThat(vet.getSpecialties()).extracting(Specialty::getName).containsExactly("Radiology", "surgery");
+        assertThat(vet.getSpecialties()).isSameAs(vet.getSpecialties());
+
+        vet.addSpecialty(specialty(3, "dentistry"));
+        assertThat(vet.getSpecialties()).extracting(Specialty::getName).containsExactly("dentistry",
+                "Radiology", "surgery");
+        Vet other = (Vet) SerializationUtils.deserialize(SerializationUtils.serialize(vet));
+        assertThat(other.getSpecialties()).extracting(Specialty::getName).containsExactly("dentistry",
+                "Radiology", "surgery");
+    }
+
+    private static Specialty specialty(int id, String name) {
+        Specialty specialty = new Specialty();
+        specialty.setId(id);
+        specialty.setName(name);
+        return specialty;
+    }
+
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2002-2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visit;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.samples.petclinic.model.JdbcIdAllocator;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for {@link VisitWriteBehindQueue}
+ */
+class VisitWriteBehindQueueTests {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private DataSourceTransactionManager transactionManager;
+
+    private VisitWriteBehindQueue queue;
+
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setup() {
+        this.database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .build();
+        this.jdbcTemplate = new JdbcTemplate(this.database);
+        this.jdbcTemplate.execute("CREATE TABLE visits (id INTEGER PRIMARY KEY, pet_id INTEGER NOT NULL, "
+                + "visit_date DATE, description VARCHAR(10))");
+        this.jdbcTemplate.execute("CREATE TABLE id_blocks (name VARCHAR(30) PRIMARY KEY, next_id INTEGER NOT NULL)");
+        this.transactionManager = new DataSourceTransactionManager(this.database);
+        this.callers = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void shutdown() throws Exception {
+        if (this.queue != null) {
+            this.queue.destroy();
+        }
+        this.callers.shutdownNow();
+        this.database.shutdown();
+    }
+
+    @Test
+    void shouldCommitConcurrentInsertsAsOneGroup() throws Exception {
+        this.queue = queue(5, Duration.ofSeconds(10));
+        List<Visit> visits = new ArrayList<>();
+        List<Future<?>> saves = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Visit visit = visit("check " + i);
+            visits.add(visit);
+            saves.add(this.callers.submit(() -> this.queue.insert(visit)));
+        }
+        for (Future<?> save : saves) {
+            save.get();
+        }
+        assertThat(visits).extracting(Visit::getId).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM visits", Integer.class)).isEqualTo(5);
+        assertThat(this.queue.getRowCount()).isEqualTo(5);
+        assertThat(this.queue.getGroupCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCommitPartialGroupAfterMaxDelay() {
+        this.queue = queue(100, Duration.ofMillis(1));
+        Visit visit = visit("check");
+        this.queue.insert(visit);
+        assertThat(visit.getId()).isNotNull();
+        assertThat(this.queue.getGroupCount()).isEqualTo(1);
+        assertThat(this.queue.getQueueDepth()).isZero();
+    }
+
+    @Test
+    void shouldFailOnlyTheVisitThatCannotBeInserted() throws Exception {
+        this.queue = queue(3, Duration.ofSeconds(10));
+        Visit first = visit("first");
+        Visit invalid = visit("far too long for the column");
+        Visit last = visit("last");
+        Future<?> firstSave = this.callers.submit(() -> this.queue.insert(first));
+        Future<?> invalidSave = this.callers.submit(() -> this.queue.insert(invalid));
+        Future<?> lastSave = this.callers.submit(() -> this.queue.insert(last));
+        firstSave.get();
+        lastSave.get();
+        assertThatThrownBy(invalidSave::get).hasCauseInstanceOf(DataIntegrityViolationException.class);
+        assertThat(first.getId()).isNotNull();
+        assertThat(invalid.getId()).isNull();
+        assertThat(last.getId()).isNotNull();
+        assertThat(this.jdbcTemplate.queryForList("SELECT description FROM visits ORDER BY id", String.class))
+                .containsExactlyInAnyOrder("first", "last");
+        assertThat(this.queue.getRowCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldInsertDirectlyWhenDisabled() {
+        this.queue = queue(0, 1, Duration.ofSeconds(10));
+        assertThat(this.queue.isEnabled()).isFalse();
+        Visit visit = visit("check");
+        this.queue.insert(visit);
+        assertThat(visit.getId()).isNotNull();
+        assertThat(this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM visits", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void shouldPublishThroughputAndQueueDepth() {
+        this.queue = queue(100, Duration.ofMillis(1));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        this.queue.bindTo(registry);
+        this.queue.insert(visit("one"));
+        this.queue.insert(visit("two"));
+        assertThat(registry.get("petclinic.visits.write-behind.rows").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("petclinic.visits.write-behind.groups").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("petclinic.visits.write-behind.queue").gauge().value()).isZero();
+        assertThat(registry.get("petclinic.visits.write-behind.commit").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldInsertDirectlyAfterShutdown() throws Exception {
+        this.queue = queue(100, Duration.ofMillis(1));
+        this.queue.destroy();
+        Visit visit = visit("check");
+        this.queue.insert(visit);
+        assertThat(visit.getId()).isNotNull();
+        assertThat(this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM visits", Integer.class)).isEqualTo(1);
+        assertThat(this.queue.getGroupCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldHandBackQueuedVisitsWhenWriterDies() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        AtomicBoolean failed = new AtomicBoolean();
+        TransactionOperations transactions = new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+                if (failed.compareAndSet(false, true)) {
+                    writing.countDown();
+                    await(fail);
+                    throw new OutOfMemoryError("test");
+                }
+                return new TransactionTemplate(transactionManager).execute(action);
+            }
+        };
+        this.queue = queue(100, 1, Duration.ofMillis(1), transactions, Duration.ofSeconds(10));
+        Visit first = visit("first");
+        Visit queued = visit("queued");
+        Future<?> firstSave = this.callers.submit(() -> this.queue.insert(first));
+        writing.await(10, TimeUnit.SECONDS);
+        Future<?> queuedSave = this.callers.submit(() -> this.queue.insert(queued));
+        while (this.queue.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+        fail.countDown();
+
+        assertThatThrownBy(() -> firstSave.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(OutOfMemoryError.class);
+        queuedSave.get(10, TimeUnit.SECONDS);
+        assertThat(queued.getId()).isNotNull();
+        Visit later = visit("later");
+        this.callers.submit(() -> this.queue.insert(later)).get(10, TimeUnit.SECONDS);
+        assertThat(this.jdbcTemplate.queryForList("SELECT description FROM visits", String.class))
+                .containsExactlyInAnyOrder("queued", "later");
+    }
+
+    @Test
+    void shouldTakeBackQueuedVisitOnTimeout() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch stalled = new CountDownLatch(1);
+        TransactionOperations transactions = new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+                writing.countDown();
+                await(stalled);
+                return new TransactionTemplate(transactionManager).execute(action);
+            }
+        };
+        this.queue = queue(100, 1, Duration.ofMillis(1), transactions, Duration.ofMillis(50));
+        Visit taken = visit("taken");
+        Visit queued = visit("queued");
+        try {
+            Future<?> takenSave = this.callers.submit(() -> this.queue.insert(taken));
+            writing.await(10, TimeUnit.SECONDS);
+            assertThatThrownBy(() -> this.queue.insert(queued)).isInstanceOf(QueryTimeoutException.class);
+            assertThat(this.queue.getQueueDepth()).isZero();
+            // the visit the writer took is waited for rather than reported as failed
+            assertThat(takenSave.isDone()).isFalse();
+            stalled.countDown();
+            takenSave.get(10, TimeUnit.SECONDS);
+        }
+        finally {
+            stalled.countDown();
+        }
+        this.queue.destroy();
+        assertThat(taken.getId()).isNotNull();
+        assertThat(queued.getId()).isNull();
+        assertThat(this.jdbcTemplate.queryForList("SELECT description FROM visits", String.class))
+                .containsExactly("taken");
+    }
+
+    @Test
+    void shouldRegisterCommitTimerOnce() {
+        this.queue = queue(100, Duration.ofMillis(1));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        this.queue.bindTo(registry);
+        this.queue.insert(visit("one"));
+        this.queue.insert(visit("two"));
+        assertThat(registry.find("petclinic.visits.write-behind.commit").timers()).hasSize(1);
+        assertThat(registry.get("petclinic.visits.write-behind.commit").timer().count()).isEqualTo(2);
+    }
+
+    private VisitWriteBehindQueue queue(int batchSize, Duration maxDelay) {
+        return queue(100, batchSize, maxDelay);
+    }
+
+    private VisitWriteBehindQueue queue(int capacity, int batchSize, Duration maxDelay) {
+        return queue(capacity, batchSize, maxDelay, new TransactionTemplate(this.transactionManager),
+                Duration.ofSeconds(10));
+    }
+
+    private VisitWriteBehindQueue queue(int capacity, int batchSize, Duration maxDelay,
+            TransactionOperations transactions, Duration timeout) {
+        JdbcIdAllocator idAllocator = new JdbcIdAllocator(this.database, new MockEnvironment());
+        return new VisitWriteBehindQueue(JdbcVisitRepositoryImpl.createInsert(this.jdbcTemplate, idAllocator),
+                transactions, capacity, batchSize, maxDelay, timeout);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Visit visit(String description) {
+        Visit visit = new Visit();
+        visit.setPetId(1);
+        visit.setDate(LocalDate.of(2020, 9, 1));
+        visit.setDescription(description);
+        return visit;
+    }
+
+}